@@ -6,13 +6,11 @@
 
 package org.jtool.changerecorder.diff;
 
-import org.jtool.changerecorder.diff.diff_match_patch.Diff;
-import org.jtool.changerecorder.diff.diff_match_patch.Operation;
 import org.jtool.changerecorder.operation.NormalOperation;
+import org.jtool.macrorecorder.diff.DiffEngine;
+import org.jtool.macrorecorder.diff.EditScript;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
 /**
  * Generates diff operations from differences between the contents of two the source files.
@@ -21,16 +19,24 @@ import java.util.ListIterator;
 public class DiffOperationGenerator {
     
     /**
-     * The cost of an empty edit operation in terms of edit characters.
+     * The engine that finds differences.
      */
-    private static short editCost = 4;
+    private static DiffEngine engine = new DiffEngine();
     
     /**
      * Sets the edit costs for finding difference.
      * @param cost the edit cost to be set
      */
     public static void setEditCost(short cost) {
-        editCost = cost;
+        engine.setEditCost(cost);
+    }
+    
+    /**
+     * Returns the engine that finds differences, which can compute them with a deadline and edit cost of each call.
+     * @return the engine
+     */
+    public static DiffEngine getEngine() {
+        return engine;
     }
     
     /**
@@ -42,71 +48,34 @@ public class DiffOperationGenerator {
      * @return the collection of the generated diff operations
      */
     public static List<NormalOperation> generate(long time, String path, String otext, String ntext) {
+        return generate(time, path, engine.diff(otext, ntext));
+    }
+    
+    /**
+     * Generates diff operations from the differences that have been found.
+     * @param time the time when this operation was inserted
+     * @param path the name of the file path on which this operation was performed
+     * @param script the edits between the old and new contents of the file
+     * @return the collection of the generated diff operations
+     */
+    public static List<NormalOperation> generate(long time, String path, EditScript script) {
         List<NormalOperation> ops = new ArrayList<NormalOperation>();
-        List<CodeDelta> deltas = findDiff(otext, ntext);
         
-        int offsetGap = 0;
-        for (int idx = 0; idx < deltas.size(); idx++) {
-            CodeDelta delta = deltas.get(idx);
-            
+        for (int idx = 0; idx < script.size(); idx++) {
             String itext = "";
             String dtext = "";
-            if (delta.getType() == CodeDelta.Type.DELETE) {
-                dtext = delta.getText();
-                
-            } else if (delta.getType() == CodeDelta.Type.INSERT) {
-                itext = delta.getText();
+            if (script.isInsertion(idx)) {
+                itext = script.getText(idx);
+            } else {
+                dtext = script.getText(idx);
             }
             
-            int start = delta.getOffset() + offsetGap;
+            int start = script.getNewOffset(idx);
             NormalOperation op = new NormalOperation(time, idx, path, start, itext, dtext, NormalOperation.Type.DIFF);
-            offsetGap = offsetGap - dtext.length();
             
             ops.add(op);
         }
         
         return ops;
     }
-    
-    /**
-     * Finds differences between the contents of two the source code files.
-     * @param otext the contents of the source code file to be diffed
-     * @param ntext the contents of the source code file to be diffed
-     * @return the collection of the code deltas
-     */
-    private static List<CodeDelta> findDiff(String otext, String ntext) {
-        diff_match_patch dmp = new diff_match_patch();
-        dmp.Diff_EditCost = editCost;
-        
-        LinkedList<Diff> diffs = dmp.diff_main(otext, ntext);
-        dmp.diff_cleanupEfficiency(diffs);
-        List<CodeDelta> deltas = getDeltas(diffs);
-        
-        return deltas;
-    }
-    
-    /**
-     * Obtains the deltas from a given difference information.
-     * @param diffs the collection of difference information of the diff utility.
-     * @return the collection of the code deltas
-     */
-    private static List<CodeDelta> getDeltas(LinkedList<Diff> diffs) {
-        ArrayList<CodeDelta> deltas = new ArrayList<CodeDelta>();
-        int offset = 0;
-        
-        for (ListIterator<Diff> pointer = diffs.listIterator(); pointer.hasNext(); ) { 
-            Diff diff = pointer.next();
-            
-            if (diff.operation == Operation.INSERT) {
-                deltas.add(new CodeDelta(offset, CodeDelta.Type.INSERT, diff.text));
-                
-            } else if (diff.operation == Operation.DELETE) {
-                deltas.add(new CodeDelta(offset, CodeDelta.Type.DELETE, diff.text));
-            }
-            
-            offset = offset + diff.text.length();
-        }
-        
-        return deltas;
-    }
 }
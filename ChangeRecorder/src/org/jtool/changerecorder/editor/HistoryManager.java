@@ -34,6 +34,8 @@ import org.eclipse.ui.IEditorPart;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
 
 /**
  * A manager that manages the operation history.
@@ -71,6 +73,16 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      */
     private OperationEventListener consoleOperationListener = new ConsoleOperationListener();
     
+    /**
+     * The compound operations already stored into the history for streamed compound macros whose last segments have not arrived yet.
+     */
+    private Map<Long, CompoundOperation> openCompounds = new HashMap<Long, CompoundOperation>();
+    
+    /**
+     * The operations contained in the respective open compound operations, to which the operations of later segments are appended.
+     */
+    private Map<Long, List<IOperation>> openCompoundOperations = new HashMap<Long, List<IOperation>>();
+    
     /**
      * Creates a manager that records operations performed on an editor.
      */
@@ -127,10 +139,11 @@ public class HistoryManager extends OperationEventSource implements MacroListene
     
     /**
      * Receives a macro event when a new macro is added.
+     * This method is called on the thread that dispatches macro events.
      * @param evt the macro event
      */
     @Override
-    public void macroAdded(MacroEvent evt) {
+    public synchronized void macroAdded(MacroEvent evt) {
         Macro macro = evt.getMacro();
         // System.out.println(macro.toString());
         
@@ -173,7 +186,7 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      * Stores an operation into the operation history.
      * @param op the operation to be stored
      */
-    private void storeOperation(IOperation op) {
+    private synchronized void storeOperation(IOperation op) {
         history.add(op);
         notify(op);
     }
@@ -183,7 +196,10 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      * @return the last operation, or <code>null</code> if none
      */
     IOperation getLastOperation() {
-        return history.getLastOperation();
+        flushMacros();
+        synchronized (this) {
+            return history.getLastOperation();
+        }
     }
     
     /**
@@ -192,8 +208,18 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      * @param code the contents of the source code when the operation was performed
      */
     void recordFileOpenOperation(IFile file, String code) {
-        String path = file.getFullPath().toString();
-        
+        flushMacros();
+        synchronized (this) {
+            recordFileOpenOperation(file.getFullPath().toString(), code);
+        }
+    }
+    
+    /**
+     * Records a file open operation.
+     * @param path the path of the file
+     * @param code the contents of the source code when the operation was performed
+     */
+    private void recordFileOpenOperation(String path, String code) {
         if (newOperation != null) {
             FileOperation op = new FileOperation(Time.getCurrentTime(), path, FileOperation.Type.OPEN, "");
             storeOperation(op);
@@ -216,9 +242,12 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      * @param code the contents of the source code when the operation was performed
      */
     void recordFileCloseOperation(IFile file, String code) {
-        String path = file.getFullPath().toString();
-        closeOperation = new FileOperation(Time.getCurrentTime(), path, FileOperation.Type.CLOSE, code);
-        storeOperation(closeOperation);
+        flushMacros();
+        synchronized (this) {
+            String path = file.getFullPath().toString();
+            closeOperation = new FileOperation(Time.getCurrentTime(), path, FileOperation.Type.CLOSE, code);
+            storeOperation(closeOperation);
+        }
     }
     
     /**
@@ -229,6 +258,8 @@ public class HistoryManager extends OperationEventSource implements MacroListene
      * @param codeWrite <code>true</code> if source code will be written, otherwise <code>false</code>
      */
     void recordFileOperation(IFile file, String code, FileOperation.Type type, boolean codeWrite) {
+        flushMacros();
+        
         FileOperation op;
         if (codeWrite) {
             op = new FileOperation(Time.getCurrentTime(), file.getFullPath().toString(), type, code);
@@ -280,21 +311,63 @@ public class HistoryManager extends OperationEventSource implements MacroListene
     
     /**
      * Creates a compound operation from a macro.
+     * The compound operation of a streamed macro is stored into the history when its first segment arrives,
+     * and the operations of each segment are appended to it as they arrive, so that no segment is kept until the last one.
+     * Listeners are notified of the compound operation when its last segment arrives.
      * @param macro the recorded macro
-     * @return the created operation
+     * @return the created operation, or <code>null</code> if the macro is streamed or contains no operation
      */
     private IOperation createOperation(CompoundMacro macro) {
-        if (macro.getMacros().size() == 0) {
-            return null;
+        CompoundMacro.Frame frame = macro.getFrame();
+        if (frame == CompoundMacro.Frame.WHOLE) {
+            if (macro.getMacros().size() == 0) {
+                return null;
+            }
+            
+            List<IOperation> ops = new ArrayList<IOperation>();
+            addOperations(ops, macro);
+            return new CompoundOperation(macro.getStartTime(), ops, macro.getType());
+        }
+        
+        Long id = Long.valueOf(macro.getStreamId());
+        CompoundOperation cop = openCompounds.get(id);
+        List<IOperation> ops = openCompoundOperations.get(id);
+        if (cop == null) {
+            ops = new ArrayList<IOperation>();
+            cop = new CompoundOperation(macro.getStartTime(), ops, macro.getType());
+            history.add(cop);
+            openCompounds.put(id, cop);
+            openCompoundOperations.put(id, ops);
+            
+            newOperation = null;
+            closeOperation = null;
         }
+        addOperations(ops, macro);
         
-        List<IOperation> ops = new ArrayList<IOperation>();
+        if (frame == CompoundMacro.Frame.END) {
+            openCompounds.remove(id);
+            openCompoundOperations.remove(id);
+            
+            if (ops.size() == 0) {
+                history.getOperations().remove(cop);
+            } else {
+                notify(cop);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Converts document macros contained in a compound macro into operations.
+     * @param ops the collection that stores the converted operations
+     * @param macro the compound macro
+     */
+    private void addOperations(List<IOperation> ops, CompoundMacro macro) {
         for (Macro m : macro.getMacros()) {
             if (m instanceof DocumentMacro) {
                 ops.add(createOperation((DocumentMacro)m));
             }
         }
-        return new CompoundOperation(macro.getStartTime(), ops, macro.getType());
     }
     
     /**
@@ -356,26 +429,44 @@ public class HistoryManager extends OperationEventSource implements MacroListene
     
     /**
      * Writes the operation history related to a file.
+     * The operations of an open compound operation written here are not written again, and the later segments
+     * of its macro are stored into a new compound operation.
      * @param encoding the encoding of the file
      */
     void writeHistory(String encoding) {
-        if (!toBeWritten(history)) {
-            return;
-        }
-        
-        history.sort();
+        flushMacros();
         
-        if (encoding == null) {
-            encoding = WorkspaceUtilities.getEncoding();
+        synchronized (this) {
+            if (!toBeWritten(history)) {
+                return;
+            }
+            
+            history.sort();
+            
+            if (encoding == null) {
+                encoding = WorkspaceUtilities.getEncoding();
+            }
+            
+            String dpath = OperationHistory.getOperationHistoryDirPath();
+            String wpath = dpath + '/' + String.valueOf(Time.getCurrentTime()) + ".xml";
+            
+            history.write(wpath, encoding);
+            // System.out.println(history.toString());
+            
+            history.clear();
+            openCompounds.clear();
+            openCompoundOperations.clear();
+        }
+    }
+    
+    /**
+     * Waits until the recorder has delivered all the pending macro events to this manager.
+     * This must be called without holding the lock of this manager, which the delivery needs.
+     */
+    private void flushMacros() {
+        if (recorder != null) {
+            recorder.flush();
         }
-        
-        String dpath = OperationHistory.getOperationHistoryDirPath();
-        String wpath = dpath + '/' + String.valueOf(Time.getCurrentTime()) + ".xml";
-        
-        history.write(wpath, encoding);
-        // System.out.println(history.toString());
-        
-        history.clear();
     }
     
     /**
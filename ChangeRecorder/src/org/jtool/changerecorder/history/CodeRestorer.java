@@ -144,25 +144,7 @@ public class CodeRestorer {
      * @return <code>true</code> if a mismatch exists, otherwise <code>false</code>
      */
     private static boolean hasDeletionMismatch(StringBuilder code, NormalOperation op) {
-        String dtext = op.getDeletedText();
-        int start = op.getStart();
-        int end = start + dtext.length();
-        
-        if (dtext.length() > 0) {
-            String rtext = code.substring(start, end);
-            if (rtext != null && rtext.compareTo(dtext) != 0) {
-                
-                for (int i = 0; i < rtext.length(); i++) {
-                    if (rtext.charAt(i) == dtext.charAt(i)) {
-                        System.out.println(((int)rtext.charAt(i)) + " == " + ((int)dtext.charAt(i)));
-                    } else {
-                        System.out.println(((int)rtext.charAt(i)) + " != " + ((int)dtext.charAt(i)));
-                    }
-                }
-                return true;
-            }
-        }
-        return false;
+        return !regionMatches(code, op.getStart(), op.getDeletedText());
     }
     
     /**
@@ -172,24 +154,31 @@ public class CodeRestorer {
      * @return <code>true</code> if a mismatch exists, otherwise <code>false</code>
      */
     private static boolean hasInsertionMismatch(StringBuilder code, NormalOperation op) {
-        String itext = op.getDeletedText();
-        int start = op.getStart();
-        int end = start + itext.length();
+        return !regionMatches(code, op.getStart(), op.getDeletedText());
+    }
+    
+    /**
+     * Tests if the code starting at a given offset equals to a given text.
+     * The comparison stops at the first different character without copying the code.
+     * @param code the code
+     * @param start the offset where the comparison starts
+     * @param text the text to be compared
+     * @return <code>true</code> if the texts are the same, otherwise <code>false</code>
+     */
+    private static boolean regionMatches(CharSequence code, int start, String text) {
+        if (text.length() == 0) {
+            return true;
+        }
         
-        if (itext.length() > 0) {
-            String rtext = code.substring(start, end);
-            if (rtext != null && rtext.compareTo(itext) != 0) {
-                
-                for (int i = 0; i < rtext.length(); i++) {
-                    if (rtext.charAt(i) == itext.charAt(i)) {
-                        System.out.println(((int)rtext.charAt(i)) + " == " + ((int)itext.charAt(i)));
-                    } else {
-                        System.out.println(((int)rtext.charAt(i)) + " != " + ((int)itext.charAt(i)));
-                    }
-                }
-                return true;
+        if (start < 0 || start + text.length() > code.length()) {
+            return false;
+        }
+        
+        for (int i = 0; i < text.length(); i++) {
+            if (code.charAt(start + i) != text.charAt(i)) {
+                return false;
             }
         }
-        return false;
+        return true;
     }
 }
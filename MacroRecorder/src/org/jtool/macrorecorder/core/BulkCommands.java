@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Knows the commands that rewrite a document programmatically, whose changes are recorded as bulk changes.
+ * @author Katsuhisa Maruyama
+ */
+public class BulkCommands {
+    
+    /**
+     * The types of bulk changes indexed by the identifiers of the commands.
+     */
+    private static Map<String, String> types = new HashMap<String, String>();
+    
+    static {
+        types.put("org.eclipse.jdt.ui.edit.text.java.format", "Format");
+        types.put("org.eclipse.jdt.ui.edit.text.java.indent", "Format");
+        types.put("org.eclipse.jdt.ui.edit.text.java.organize.imports", "OrganizeImports");
+        types.put("org.eclipse.jdt.ui.edit.text.java.add.import", "OrganizeImports");
+        types.put("org.eclipse.jdt.ui.edit.text.java.clean.up", "CleanUp");
+        types.put("org.eclipse.jdt.ui.edit.text.java.sort.members", "SortMembers");
+        types.put("org.eclipse.ui.file.save", "SaveActions");
+    }
+    
+    /**
+     * Returns the type of the bulk change performed by a command.
+     * @param commandId the identifier of the command
+     * @return the type of the bulk change, or <code>null</code> if the command does not perform any bulk change
+     */
+    public static String getType(String commandId) {
+        if (commandId == null) {
+            return null;
+        }
+        return types.get(commandId);
+    }
+}
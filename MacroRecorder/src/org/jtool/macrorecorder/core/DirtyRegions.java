@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the regions where a document may differ from its shadow code.
+ * Each region is a pair of ranges, one in the shadow code and one in the document, and the text outside
+ * the regions is the same in both. Changes of either side widen or merge the regions and shift the ones after them.
+ * @author Katsuhisa Maruyama
+ */
+class DirtyRegions {
+    
+    /**
+     * The maximum number of the regions, beyond which they are merged into one region.
+     */
+    private static final int MAX_REGIONS = 64;
+    
+    /**
+     * The starts of the respective regions in the shadow code.
+     */
+    private int[] oldStarts = new int[8];
+    
+    /**
+     * The ends of the respective regions in the shadow code.
+     */
+    private int[] oldEnds = new int[8];
+    
+    /**
+     * The starts of the respective regions in the document.
+     */
+    private int[] newStarts = new int[8];
+    
+    /**
+     * The ends of the respective regions in the document.
+     */
+    private int[] newEnds = new int[8];
+    
+    /**
+     * The number of the regions.
+     */
+    private int size = 0;
+    
+    /**
+     * A flag indicating if a change whose position is unknown was made.
+     */
+    private boolean unknown = true;
+    
+    /**
+     * Creates a set of regions in which any change is unknown.
+     */
+    DirtyRegions() {
+    }
+    
+    /**
+     * Forgets all the regions after the shadow code was made the same as the document.
+     */
+    void clear() {
+        size = 0;
+        unknown = false;
+    }
+    
+    /**
+     * Records that the document was changed at an unknown position, so that the whole of it must be compared.
+     */
+    void invalidate() {
+        size = 0;
+        unknown = true;
+    }
+    
+    /**
+     * Tests if the regions are unknown.
+     * @return <code>true</code> if the whole document must be compared, otherwise <code>false</code>
+     */
+    boolean isUnknown() {
+        return unknown;
+    }
+    
+    /**
+     * Returns the number of the regions.
+     * @return the number of the regions
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the start of a region in the shadow code.
+     * @param index the index of the region
+     * @return the offset of the start
+     */
+    int getOldStart(int index) {
+        return oldStarts[index];
+    }
+    
+    /**
+     * Returns the end of a region in the shadow code.
+     * @param index the index of the region
+     * @return the offset of the end
+     */
+    int getOldEnd(int index) {
+        return oldEnds[index];
+    }
+    
+    /**
+     * Returns the start of a region in the document.
+     * @param index the index of the region
+     * @return the offset of the start
+     */
+    int getNewStart(int index) {
+        return newStarts[index];
+    }
+    
+    /**
+     * Returns the end of a region in the document.
+     * @param index the index of the region
+     * @return the offset of the end
+     */
+    int getNewEnd(int index) {
+        return newEnds[index];
+    }
+    
+    /**
+     * Returns the difference between the lengths of the document and the shadow code.
+     * @return the length of the document minus the length of the shadow code
+     */
+    int getLengthDelta() {
+        int delta = 0;
+        for (int i = 0; i < size; i++) {
+            delta = delta + (newEnds[i] - newStarts[i]) - (oldEnds[i] - oldStarts[i]);
+        }
+        return delta;
+    }
+    
+    /**
+     * Records a change of the document.
+     * @param offset the offset of the change in the document
+     * @param length the length of the replaced text
+     * @param textLength the length of the inserted text
+     */
+    void documentChanged(int offset, int length, int textLength) {
+        if (!unknown) {
+            change(true, offset, length, textLength);
+        }
+    }
+    
+    /**
+     * Records a change of the shadow code.
+     * @param offset the offset of the change in the shadow code
+     * @param length the length of the replaced text
+     * @param textLength the length of the inserted text
+     */
+    void codeChanged(int offset, int length, int textLength) {
+        if (!unknown) {
+            change(false, offset, length, textLength);
+        }
+    }
+    
+    /**
+     * Records a change of either side, which merges the regions it touches into one.
+     * @param onDocument <code>true</code> if the document was changed, or <code>false</code> if the shadow code was changed
+     * @param offset the offset of the change
+     * @param length the length of the replaced text
+     * @param textLength the length of the inserted text
+     */
+    private void change(boolean onDocument, int offset, int length, int textLength) {
+        if (length == 0 && textLength == 0) {
+            return;
+        }
+        
+        ensureCapacity(size + 1);
+        int[] starts = onDocument ? newStarts : oldStarts;
+        int[] ends = onDocument ? newEnds : oldEnds;
+        int[] otherStarts = onDocument ? oldStarts : newStarts;
+        int[] otherEnds = onDocument ? oldEnds : newEnds;
+        
+        int first = 0;
+        while (first < size && ends[first] < offset) {
+            first++;
+        }
+        int last = first;
+        while (last < size && starts[last] <= offset + length) {
+            last++;
+        }
+        
+        int start;
+        int end;
+        int otherStart;
+        int otherEnd;
+        if (first == last) {
+            int shift = first > 0 ? otherEnds[first - 1] - ends[first - 1] : 0;
+            start = offset;
+            end = offset + length;
+            otherStart = offset + shift;
+            otherEnd = offset + length + shift;
+        } else {
+            start = Math.min(offset, starts[first]);
+            end = Math.max(offset + length, ends[last - 1]);
+            otherStart = otherStarts[first] - Math.max(0, starts[first] - offset);
+            otherEnd = otherEnds[last - 1] + Math.max(0, offset + length - ends[last - 1]);
+        }
+        
+        int delta = textLength - length;
+        for (int i = last; i < size; i++) {
+            starts[i] = starts[i] + delta;
+            ends[i] = ends[i] + delta;
+        }
+        
+        int removed = last - first - 1;
+        int tail = size - last;
+        System.arraycopy(oldStarts, last, oldStarts, first + 1, tail);
+        System.arraycopy(oldEnds, last, oldEnds, first + 1, tail);
+        System.arraycopy(newStarts, last, newStarts, first + 1, tail);
+        System.arraycopy(newEnds, last, newEnds, first + 1, tail);
+        size = size - removed;
+        
+        starts[first] = start;
+        ends[first] = end + delta;
+        otherStarts[first] = otherStart;
+        otherEnds[first] = otherEnd;
+        
+        if (size > MAX_REGIONS) {
+            oldEnds[0] = oldEnds[size - 1];
+            newEnds[0] = newEnds[size - 1];
+            size = 1;
+        }
+    }
+    
+    /**
+     * Enlarges the arrays of the regions.
+     * @param capacity the required number of the regions
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > oldStarts.length) {
+            int n = oldStarts.length * 2;
+            oldStarts = Arrays.copyOf(oldStarts, n);
+            oldEnds = Arrays.copyOf(oldEnds, n);
+            newStarts = Arrays.copyOf(newStarts, n);
+            newEnds = Arrays.copyOf(newEnds, n);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import org.jtool.macrorecorder.macro.DocumentMacro;
+import org.jtool.macrorecorder.macro.TriggerMacro;
+import org.jtool.macrorecorder.macro.CancelMacro;
+import org.jtool.macrorecorder.recorder.RecorderStatistics;
+
+/**
+ * Converts document events into macros without depending on any editor.
+ * Editor adapters translate their own events into calls of this handler.
+ * @author Katsuhisa Maruyama
+ */
+public class DocumentEventHandler {
+    
+    /**
+     * A recorder that records macros.
+     */
+    private DocumentRecorder recorder;
+    
+    /**
+     * The kinds of a macro.
+     */
+    private enum UndoRedoKind {
+        UNDO, REDO, NO;
+    }
+    
+    /**
+     * The object that indicates the kind of undo/redo macro.
+     */
+    private UndoRedoKind kind = UndoRedoKind.NO;
+    
+    /**
+     * The smallest length of the texts of a whole-document replacement that is recorded as a bulk change.
+     */
+    private static final int BULK_REPLACE_LENGTH = 256;
+    
+    /**
+     * A flag indicating if the change in progress replaces the whole document as a bulk change.
+     */
+    private boolean replacingWhole = false;
+    
+    /**
+     * Creates an object that converts document events into macros.
+     * @param recorder a recorder that records macros
+     */
+    public DocumentEventHandler(DocumentRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Returns the recorder that records macros.
+     * @return the recorder
+     */
+    public DocumentRecorder getRecorder() {
+        return recorder;
+    }
+    
+    /**
+     * Receives a document change that will be performed.
+     * @param contents the contents of the document before the change
+     * @param offset the offset of the changed text
+     * @param length the length of the replaced text
+     * @param text the text inserted by the change, or <code>null</code> if none
+     */
+    public void documentAboutToBeChanged(TextContents contents, int offset, int length, String text) {
+        long start = System.nanoTime();
+        try {
+            recordChange(contents, offset, length, text);
+        } finally {
+            RecorderStatistics.getInstance().recordSince(RecorderStatistics.Timer.DOCUMENT_EVENT, start);
+        }
+    }
+    
+    /**
+     * Records a macro of a document change that will be performed.
+     * @param contents the contents of the document before the change
+     * @param offset the offset of the changed text
+     * @param length the length of the replaced text
+     * @param text the text inserted by the change, or <code>null</code> if none
+     */
+    private void recordChange(TextContents contents, int offset, int length, String text) {
+        recorder.documentAboutToBeChanged(contents, offset, length, text != null ? text.length() : 0);
+        
+        if (!recorder.isBulkChanging() && recorder.getCutPasteType() == null &&
+            isWholeReplacement(contents, offset, length, text)) {
+            recorder.beginBulkChange("Replace");
+            replacingWhole = true;
+        }
+        if (recorder.isBulkChanging()) {
+            recorder.foldBulkEvent();
+            return;
+        }
+        
+        String insertedText = text;
+        if (insertedText == null) {
+            insertedText = "";
+        }
+        String deletedText = "";
+        if (length > 0) {
+            try {
+                deletedText = contents.get(offset, length);
+            } catch (IndexOutOfBoundsException e) {
+                e.printStackTrace();
+                recorder.invalidateSync();
+                return;
+            }
+        }
+        
+        if (insertedText.length() == 0 && deletedText.length() == 0) {
+            return;
+        }
+        
+        RecordingContext context = recorder.getContext();
+        long time = context.getCurrentTime();
+        String path = recorder.getPath();
+        
+        if (kind == UndoRedoKind.UNDO) {
+            DocumentMacro macro;
+            if (context.getParentMacro() == null) {
+                macro = new DocumentMacro(time, "Undo", path, offset, insertedText, deletedText);
+            } else {
+                macro = new CancelMacro(time, "Undo", path, offset, insertedText, deletedText);
+            }
+            recorder.recordUndoRedoMacro(macro);
+            
+        } else if (kind == UndoRedoKind.REDO) {
+            DocumentMacro macro;
+            if (context.getParentMacro() == null) {
+                macro = new DocumentMacro(time, "Redo", path, offset, insertedText, deletedText);
+            } else {
+                macro = new CancelMacro(time, "Redo", path, offset, insertedText, deletedText);
+            }
+            recorder.recordUndoRedoMacro(macro);
+            
+        } else {
+            DocumentMacro macro = new DocumentMacro(time, "Typing", path, offset, insertedText, deletedText);
+            recorder.recordDocumentMacro(macro);
+        }
+    }
+    
+    /**
+     * Receives a document change that has been performed.
+     * @param contents the contents of the document after the change
+     */
+    public void documentChanged(TextContents contents) {
+        recorder.documentChanged(contents);
+        
+        if (replacingWhole) {
+            replacingWhole = false;
+            recorder.endBulkChange();
+        }
+    }
+    
+    /**
+     * Tests if a change replaces a whole large document programmatically, as the set of the document contents does.
+     * Such a change is recorded as the difference macros between the old and new contents.
+     * A paste over the whole document is excluded by the caller, since it is recorded as a paste macro.
+     * @param contents the contents of the document before the change
+     * @param offset the offset of the changed text
+     * @param length the length of the replaced text
+     * @param text the text inserted by the change, or <code>null</code> if none
+     * @return <code>true</code> if the change is a whole-document replacement, otherwise <code>false</code>
+     */
+    private boolean isWholeReplacement(TextContents contents, int offset, int length, String text) {
+        return kind == UndoRedoKind.NO && offset == 0 && length >= BULK_REPLACE_LENGTH &&
+               text != null && text.length() >= BULK_REPLACE_LENGTH && length == contents.getLength();
+    }
+    
+    /**
+     * Receives a notification that an undo will be performed.
+     */
+    public void aboutToUndo() {
+        recordTrigger("Undo", TriggerMacro.Kind.BEGIN);
+        kind = UndoRedoKind.UNDO;
+    }
+    
+    /**
+     * Receives a notification that a redo will be performed.
+     */
+    public void aboutToRedo() {
+        recordTrigger("Redo", TriggerMacro.Kind.BEGIN);
+        kind = UndoRedoKind.REDO;
+    }
+    
+    /**
+     * Receives a notification that an undo has been performed.
+     */
+    public void undone() {
+        recordTrigger("Undo", TriggerMacro.Kind.END);
+        kind = UndoRedoKind.NO;
+    }
+    
+    /**
+     * Receives a notification that a redo has been performed.
+     */
+    public void redone() {
+        recordTrigger("Redo", TriggerMacro.Kind.END);
+        kind = UndoRedoKind.NO;
+    }
+    
+    /**
+     * Records a trigger macro of undo or redo unless the macro dangles on a parent macro.
+     * @param type the type of the trigger
+     * @param triggerKind the kind of the trigger
+     */
+    private void recordTrigger(String type, TriggerMacro.Kind triggerKind) {
+        RecordingContext context = recorder.getContext();
+        if (context.getParentMacro() == null) {
+            long time = context.getCurrentTime();
+            TriggerMacro trigger = new TriggerMacro(time, type, recorder.getPath(), triggerKind);
+            recorder.recordTriggerMacro(trigger);
+        }
+    }
+    
+    /**
+     * Receives a notification that the cursor position may have been changed.
+     * The moves are coalesced by the recorder until the next macro is recorded.
+     */
+    public void cursorMoved() {
+        RecordingContext context = recorder.getContext();
+        recorder.recordCursorMove(context.getCurrentTime());
+        
+        context.setParentMacro(null);
+    }
+}
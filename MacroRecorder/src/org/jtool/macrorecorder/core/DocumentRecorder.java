@@ -0,0 +1,1038 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import org.jtool.macrorecorder.recorder.DiagnosticEvent;
+import org.jtool.macrorecorder.recorder.MacroCompressor;
+import org.jtool.macrorecorder.recorder.RecorderStatistics;
+import org.jtool.macrorecorder.macro.Macro;
+import org.jtool.macrorecorder.macro.RawMacroLog;
+import org.jtool.macrorecorder.macro.CompoundMacro;
+import org.jtool.macrorecorder.macro.DocumentMacro;
+import org.jtool.macrorecorder.macro.ExecutionMacro;
+import org.jtool.macrorecorder.macro.TriggerMacro;
+import org.jtool.macrorecorder.macro.ResourceMacro;
+import org.jtool.macrorecorder.macro.CancelMacro;
+import org.jtool.macrorecorder.macro.DiffMacro;
+import org.jtool.macrorecorder.internal.diff.DiffMacroGenerator;
+import org.jtool.macrorecorder.diff.DiffListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records document macros related to a file, independently of any editor.
+ * Document events are sent by <code>DocumentEventHandler</code>, and macros are sent to a recording context.
+ * @author Katsuhisa Maruyama
+ */
+public class DocumentRecorder {
+    
+    /**
+     * The number of characters read from a document at a time.
+     */
+    private static final int CHUNK_SIZE = 4096;
+    
+    /**
+     * The maximum length of a document that is resynchronized by differences when a mismatch is detected.
+     */
+    private static final int MAX_RESYNC_LENGTH = 1 << 20;
+    
+    static {
+        DiffMacroGenerator.getEngine().setListener(new DiffListener() {
+            
+            /**
+             * Records the result of a computation of difference macros in the statistics of the recorders.
+             * @param inputLength the total number of the characters of the old and new texts
+             * @param exact <code>true</code> if the computation finished before its deadline, otherwise <code>false</code>
+             * @param elapsedTime the time spent on the computation in nanoseconds
+             */
+            @Override
+            public void diffComputed(int inputLength, boolean exact, long elapsedTime) {
+                RecorderStatistics stats = RecorderStatistics.getInstance();
+                stats.increment(RecorderStatistics.Counter.DIFFS_COMPUTED);
+                stats.add(RecorderStatistics.Counter.DIFF_INPUT_CHARS, inputLength);
+                if (!exact) {
+                    stats.increment(RecorderStatistics.Counter.DIFF_TIMEOUTS);
+                }
+                stats.record(RecorderStatistics.Timer.DIFF, elapsedTime);
+            }
+        });
+    }
+    
+    /**
+     * The log of raw macros that were recorded.
+     */
+    protected RawMacroLog rawMacros;
+    
+    /**
+     * The path of a file whose contents are changed by macros.
+     */
+    protected String path;
+    
+    /**
+     * A context that sends macro events.
+     */
+    protected RecordingContext context;
+    
+    /**
+     * A compound macro that contains macros.
+     */
+    protected CompoundMacro compoundMacro;
+    
+    /**
+     * The last raw macro.
+     */
+    protected Macro lastRawMacro;
+    
+    /**
+     * The last document macro stored for macro compression.
+     */
+    protected DocumentMacro lastDocumentMacro;
+    
+    /**
+     * The contents of the previous code.
+     */
+    protected Rope preCode = Rope.EMPTY;
+    
+    /**
+     * The modification stamp of the document when its contents were last the same as the previous code.
+     */
+    private long syncedStamp = TextContents.UNKNOWN_MODIFICATION_STAMP;
+    
+    /**
+     * A flag that indicates the document under change was synchronized with the previous code before the change.
+     */
+    private boolean syncedBeforeChange;
+    
+    /**
+     * The regions where the document may differ from the previous code.
+     */
+    private DirtyRegions dirtyRegions = new DirtyRegions();
+    
+    /**
+     * The modification stamp of the document after the last change recorded in the dirty regions.
+     * The regions cover every change of the document only while its stamp is still this one.
+     */
+    private long regionStamp = TextContents.UNKNOWN_MODIFICATION_STAMP;
+    
+    /**
+     * The offset of the document change in progress, or <code>-1</code> if none.
+     */
+    private int changeOffset = -1;
+    
+    /**
+     * The length of the text replaced by the document change in progress.
+     */
+    private int changeLength;
+    
+    /**
+     * The length of the text inserted by the document change in progress.
+     */
+    private int changeTextLength;
+    
+    /**
+     * The time when this recorder was last used.
+     */
+    private volatile long lastAccessTime;
+    
+    /**
+     * The type of the bulk change in progress, or <code>null</code> if none.
+     */
+    private String bulkType;
+    
+    /**
+     * The nesting depth of the bulk changes in progress.
+     */
+    private int bulkDepth = 0;
+    
+    /**
+     * A flag indicating if the cursor has moved since the last macro was recorded.
+     */
+    private boolean cursorMoved = false;
+    
+    /**
+     * The time when the cursor last moved.
+     */
+    private long cursorMoveTime;
+    
+    /**
+     * Creates an object that records document macros related to a file.
+     * @param path the of the file
+     * @param context a context that sends macro events
+     */
+    public DocumentRecorder(String path, RecordingContext context) {
+        this.path = path;
+        this.context = context;
+        
+        this.rawMacros = new RawMacroLog();
+    }
+    
+    /**
+     * Starts the recording of document macros.
+     */
+    public void start() {
+        rawMacros.clear();
+        lastAccessTime = System.nanoTime();
+        
+        TextContents contents = getCurrentContents();
+        if (contents != null) {
+            preCode = readCode(contents);
+            markSynchronized(contents);
+            clearDirtyRegions(contents);
+        } else {
+            invalidateSync();
+            dirtyRegions.invalidate();
+        }
+        
+        compoundMacro = null;
+        lastRawMacro = null;
+        lastDocumentMacro = null;
+        bulkType = null;
+        bulkDepth = 0;
+        cursorMoved = false;
+    }
+    
+    /**
+     * Stops the recording of macros.
+     */
+    public void stop() {
+        flushCursorMove();
+        if (bulkDepth > 0) {
+            bulkDepth = 1;
+            endBulkChange();
+        }
+        dumpLastDocumentMacro();
+        needDiff();
+        
+        rawMacros.clear();
+    }
+    
+    /**
+     * Starts the recording of document macros by taking over the state of another recorder for the same document.
+     * The shadow code, the pending macros and the raw macros are moved without reading the document.
+     * @param from the recorder whose state is taken over
+     * @return <code>true</code> if the state was taken over, or <code>false</code> if the recorder records another document
+     */
+    public boolean takeOver(DocumentRecorder from) {
+        if (!prepare(from)) {
+            return false;
+        }
+        
+        from.detach();
+        
+        RawMacroLog macros = rawMacros;
+        rawMacros = from.rawMacros;
+        from.rawMacros = macros;
+        
+        preCode = from.preCode;
+        syncedStamp = from.syncedStamp;
+        dirtyRegions = from.dirtyRegions;
+        regionStamp = from.regionStamp;
+        compoundMacro = from.compoundMacro;
+        lastRawMacro = from.lastRawMacro;
+        lastDocumentMacro = from.lastDocumentMacro;
+        cursorMoved = from.cursorMoved;
+        cursorMoveTime = from.cursorMoveTime;
+        lastAccessTime = System.nanoTime();
+        
+        from.dirtyRegions = new DirtyRegions();
+        from.compoundMacro = null;
+        from.lastDocumentMacro = null;
+        from.bulkType = null;
+        from.bulkDepth = 0;
+        from.cursorMoved = false;
+        
+        if (context.unmarkDirty(from)) {
+            context.markDirty(this);
+        }
+        
+        attach();
+        return true;
+    }
+    
+    /**
+     * Prepares for taking over the state of another recorder.
+     * @param from the recorder whose state is taken over
+     * @return <code>true</code> if this recorder records the same document, otherwise <code>false</code>
+     */
+    protected boolean prepare(DocumentRecorder from) {
+        return false;
+    }
+    
+    /**
+     * Starts receiving document events after the state of another recorder was taken over.
+     */
+    protected void attach() {
+    }
+    
+    /**
+     * Stops receiving document events without dumping the pending macros, which are taken over by another recorder.
+     */
+    protected void detach() {
+    }
+    
+    /**
+     * Returns the path of a file whose contents are changed by macros.
+     * @return the file path
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * Returns the time when this recorder was last used.
+     * @return the time in nanoseconds
+     */
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+    
+    /**
+     * Returns the context that sends macro events.
+     * @return the recording context
+     */
+    public RecordingContext getContext() {
+        return context;
+    }
+    
+    /**
+     * Tests if successive document macros are compressed.
+     * @return <code>true</code> if the macros are compressed, otherwise <code>false</code>
+     */
+    protected boolean isCompressing() {
+        return false;
+    }
+    
+    /**
+     * Records a document macro and its compressed macro.
+     * @param macro the document macro
+     */
+    public void recordDocumentMacro(DocumentMacro macro) {
+        flushCursorMove();
+        if (!isCompressing()) {
+            recordRawMacro(macro);
+            dumpMacros(macro);
+            return;
+        }
+        
+        boolean isCutPaste = setCutPasteMacro(macro);
+        recordRawMacro(macro);
+        // System.out.println("MACRO = " + macro);
+        
+        if (isCutPaste) {
+            dumpMacros(macro);
+            return;
+        }
+        
+        MacroCompressor compressor = context.getMacroCompressor();
+        if (compressor.canCombine(macro)) {
+            DocumentMacro newMacro = compressor.combine(lastDocumentMacro, macro);
+            if (newMacro != null) {
+                if (lastDocumentMacro != null) {
+                    RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.DOCUMENT_MACROS_COMPRESSED);
+                }
+                if (newMacro.isEmpty()) {
+                    RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.DOCUMENT_MACROS_CANCELLED);
+                    lastDocumentMacro = null;
+                } else {
+                    lastDocumentMacro = newMacro;
+                }
+            } else {
+                dumpLastDocumentMacro();
+                lastDocumentMacro = macro;
+            }
+        } else {
+            dumpMacros(macro);
+        }
+    }
+    
+    /**
+     * Tests if a macro indicates the cut or paste and sets its type according to its result.
+     * @param macro a macro that might be a cut or paste one
+     * @return <code>true</code> if a macro indicates the cut or paste, otherwise <code>false</code>
+     */
+    protected boolean setCutPasteMacro(DocumentMacro macro) {
+        String type = getCutPasteType();
+        if (type == null) {
+            return false;
+        }
+        
+        macro.setType(type);
+        return true;
+    }
+    
+    /**
+     * Returns the type of the cut or paste command that was executed just before the next document change.
+     * @return <code>"Cut"</code> or <code>"Paste"</code>, or <code>null</code> if the last raw macro is neither of them
+     */
+    public String getCutPasteType() {
+        if (lastRawMacro instanceof ExecutionMacro) {
+            ExecutionMacro emacro = (ExecutionMacro)lastRawMacro;
+            if (emacro.getCommandId().compareTo("org.eclipse.ui.edit.cut") == 0) {
+                return "Cut";
+            } else if (emacro.getCommandId().compareTo("org.eclipse.ui.edit.paste") == 0) {
+                return "Paste";
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Records a command execution macro.
+     * @param macro the command execution macro
+     */
+    public void recordExecutionMacro(ExecutionMacro macro) {
+        flushCursorMove();
+        recordRawMacro(macro);
+        dumpMacros(macro);
+    }
+    
+    /**
+     * Records a trigger macro.
+     * @param macro the trigger macro
+     */
+    public void recordTriggerMacro(TriggerMacro macro) {
+        flushCursorMove();
+        recordRawMacro(macro);
+        dumpMacros(macro);
+    }
+    
+    /**
+     * Records a move of the cursor.
+     * Successive moves are coalesced, and only the last one before the next macro is recorded as a trigger macro.
+     * @param time the time when the cursor moved
+     */
+    public void recordCursorMove(long time) {
+        RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.CURSOR_MOVES);
+        cursorMoveTime = time;
+        lastAccessTime = System.nanoTime();
+        
+        if (!cursorMoved) {
+            cursorMoved = true;
+            context.markDirty(this);
+        }
+    }
+    
+    /**
+     * Records the trigger macro of the coalesced cursor moves if the cursor has moved.
+     */
+    private void flushCursorMove() {
+        if (!cursorMoved) {
+            return;
+        }
+        cursorMoved = false;
+        
+        RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.CURSOR_TRIGGERS);
+        String commandId = "Cursor.position.change";
+        TriggerMacro trigger = new TriggerMacro(cursorMoveTime, commandId, path, TriggerMacro.Kind.CURSOR_CHANGE);
+        recordRawMacro(trigger);
+        dumpMacros(trigger);
+    }
+    
+    /**
+     * Records a resource change macro.
+     * @param macro the resource change macro
+     */
+    public void recordResourceMacro(ResourceMacro macro) {
+        flushCursorMove();
+        recordRawMacro(macro);
+        dumpMacros(macro);
+        
+        if (macro.isRemoved()) {
+            context.removeRecorder(macro.getPath());
+        }
+    }
+    
+    /**
+     * Records a compressed macro into the operation history and its original one in .
+     * @param macro a document macro
+     */
+    public void recordUndoRedoMacro(DocumentMacro macro) {
+        flushCursorMove();
+        recordRawMacro(macro);
+        dumpMacros(macro);
+    }
+    
+    /**
+     * Records a raw macro.
+     * @param macro the raw macro to be recored
+     */
+    protected void recordRawMacro(Macro macro) {
+        if (macro instanceof DocumentMacro) {
+            RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.DOCUMENT_MACROS_RECORDED);
+        }
+        
+        rawMacros.add(macro);
+        context.notifyRawMacro(macro);
+        
+        lastRawMacro = macro;
+        lastAccessTime = System.nanoTime();
+    }
+    
+    /**
+     * Dumps the last macro.
+     */
+    public void dumpLastDocumentMacro() {
+        if (lastDocumentMacro != null) {
+            DocumentMacro macro = lastDocumentMacro;
+            lastDocumentMacro = null;
+            
+            if (!hasMismatch(preCode, macro)) {
+                // System.out.println("LAST MACRO = " + macro.toString());
+                recordMacro(macro);
+                applyMacro(macro);
+            } else {
+                resync(macro, true);
+            }
+        }
+    }
+    
+    /**
+     * Break the current macro.
+     */
+    public void breakMacro() {
+        breakDirtyMacros(context);
+    }
+    
+    /**
+     * Break the current macros of the recorders that might have pending macros or unsynchronized document changes.
+     * Recorders whose documents have not been changed since the last break are not visited.
+     * @param context the context that keeps the recorders
+     */
+    public static void breakDirtyMacros(RecordingContext context) {
+        for (DocumentRecorder docRecorder : context.getDirtyRecorders()) {
+            if (context.unmarkDirty(docRecorder)) {
+                docRecorder.flushCursorMove();
+                docRecorder.dumpLastDocumentMacro();
+                docRecorder.needDiff();
+                
+                if (docRecorder.lastDocumentMacro != null) {
+                    context.markDirty(docRecorder);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Dumps both the last macro and the latest one.
+     * @param macro the latest macro
+     */
+    protected void dumpMacros(Macro macro) {
+        long start = System.nanoTime();
+        dumpLastDocumentMacro();
+        
+        if (!hasMismatch(preCode, macro) || resync((DocumentMacro)macro, false)) {
+            // System.out.println("MACRO = " + macro.toString());
+            recordMacro(macro);
+            applyMacro(macro);
+        }
+        RecorderStatistics.getInstance().recordSince(RecorderStatistics.Timer.DUMP_MACROS, start);
+    }
+    
+    /**
+     * Records a macro.
+     * @param macro the macro to be recorded
+     */
+    protected void recordMacro(Macro macro) {
+        if (macro instanceof TriggerMacro) {
+            TriggerMacro tmacro = (TriggerMacro)macro;
+            if (compoundMacro == null && tmacro.isBegin()) {
+                compoundMacro = new CompoundMacro(tmacro.getStartTime(), tmacro.getType(), macro.getPath());
+                
+            } else if (tmacro.isEnd() || tmacro.isCursorChange()) {
+                if (compoundMacro != null) {
+                    CompoundMacro last = compoundMacro.end();
+                    last.setRawMacros(rawMacros.take());
+                    
+                    context.notifyMacro(last);
+                }
+                compoundMacro = null;
+            }
+            
+        } else {
+            if (macro instanceof DocumentMacro) {
+                RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.DOCUMENT_MACROS_EMITTED);
+            }
+            
+            if (compoundMacro != null) {
+                if (macro instanceof CancelMacro) {
+                    CancelMacro cmacro = (CancelMacro)macro;
+                    boolean suc = compoundMacro.cancelMacro(cmacro);
+                    if (!suc) {
+                        if (compoundMacro.isStreamed()) {
+                            compoundMacro.addMacro(macro);
+                        } else {
+                            System.err.println("Cancellation failed: undo in refactoring");
+                        }
+                    }
+                } else {
+                    compoundMacro.addMacro(macro);
+                }
+                
+                if (compoundMacro.isSegmentFull()) {
+                    CompoundMacro segment = compoundMacro.takeSegment();
+                    segment.setRawMacros(rawMacros.take());
+                    
+                    context.notifyMacro(segment);
+                }
+                
+            } else {
+                macro.setRawMacros(rawMacros.take());
+                
+                context.notifyMacro(macro);
+            }
+        }
+    }
+    
+    /**
+     * Obtains the current contents of a file under recording.
+     * @return the contents of source code, or <code>null</code> if source code does not exist
+     */
+    protected TextContents getCurrentContents() {
+        return null;
+    }
+    
+    /**
+     * Reads the contents of a document chunk by chunk.
+     * @param contents the contents of the document
+     * @return the contents of the document
+     */
+    public static Rope readCode(TextContents contents) {
+        Rope code = Rope.EMPTY;
+        try {
+            int length = contents.getLength();
+            for (int offset = 0; offset < length; offset = offset + CHUNK_SIZE) {
+                int len = Math.min(CHUNK_SIZE, length - offset);
+                code = code.replace(code.length(), code.length(), contents.get(offset, len));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return Rope.of(contents.get());
+        }
+        return code;
+    }
+    
+    /**
+     * Tests if the contents of a document are the same as given code.
+     * The contents are compared with the running hash of the code, so no string of the whole document is built.
+     * @param code the code
+     * @param contents the contents of the document
+     * @return <code>true</code> if the contents are the same, otherwise <code>false</code>
+     */
+    protected static boolean contentEquals(Rope code, TextContents contents) {
+        int length = contents.getLength();
+        if (length != code.length()) {
+            return false;
+        }
+        
+        long hash = 0;
+        try {
+            for (int offset = 0; offset < length; offset = offset + CHUNK_SIZE) {
+                int len = Math.min(CHUNK_SIZE, length - offset);
+                hash = Rope.hash(hash, contents.get(offset, len));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        return hash == code.hash();
+    }
+    
+    /**
+     * Remembers that the current contents of a document are the same as the previous code.
+     * @param contents the contents of the document
+     */
+    protected void markSynchronized(TextContents contents) {
+        syncedStamp = contents.getModificationStamp();
+    }
+    
+    /**
+     * Forgets the modification stamp of the document, so that the next check compares its contents.
+     */
+    protected void invalidateSync() {
+        syncedStamp = TextContents.UNKNOWN_MODIFICATION_STAMP;
+        syncedBeforeChange = false;
+    }
+    
+    /**
+     * Tests if the document has not been modified since its contents were last the same as the previous code.
+     * @param contents the contents of the document
+     * @return <code>true</code> if the document is known to be unchanged, otherwise <code>false</code>
+     */
+    private boolean isSynchronized(TextContents contents) {
+        long stamp = contents.getModificationStamp();
+        return stamp != TextContents.UNKNOWN_MODIFICATION_STAMP && stamp == syncedStamp;
+    }
+    
+    /**
+     * Forgets the dirty regions after the previous code was made the same as the document.
+     * @param contents the contents of the document
+     */
+    private void clearDirtyRegions(TextContents contents) {
+        dirtyRegions.clear();
+        regionStamp = contents.getModificationStamp();
+    }
+    
+    /**
+     * Tests if the document has not been changed since the last change recorded in the dirty regions,
+     * that is, no change was made without a document event.
+     * @param contents the contents of the document
+     * @return <code>true</code> if the dirty regions cover every change of the document, otherwise <code>false</code>
+     */
+    private boolean isRegionStamp(TextContents contents) {
+        long stamp = contents.getModificationStamp();
+        return stamp != TextContents.UNKNOWN_MODIFICATION_STAMP && stamp == regionStamp;
+    }
+    
+    /**
+     * Receives a notification that a document will be changed.
+     * @param contents the contents of the document
+     * @param offset the offset of the changed text
+     * @param length the length of the replaced text
+     * @param textLength the length of the inserted text
+     */
+    public void documentAboutToBeChanged(TextContents contents, int offset, int length, int textLength) {
+        if (!isRegionStamp(contents)) {
+            dirtyRegions.invalidate();
+        }
+        changeOffset = offset;
+        changeLength = length;
+        changeTextLength = textLength;
+        syncedBeforeChange = bulkDepth == 0 && isSynchronized(contents);
+        context.markDirty(this);
+    }
+    
+    /**
+     * Receives a notification that a document has been changed.
+     * The region of the change is recorded only now, so that a check made while the change was in progress
+     * does not forget it. The document stays synchronized if the change was applied to the previous code.
+     * @param contents the contents of the document
+     */
+    public void documentChanged(TextContents contents) {
+        if (changeOffset >= 0) {
+            dirtyRegions.documentChanged(changeOffset, changeLength, changeTextLength);
+            regionStamp = contents.getModificationStamp();
+            changeOffset = -1;
+        }
+        
+        if (syncedBeforeChange) {
+            markSynchronized(contents);
+        } else {
+            invalidateSync();
+        }
+        syncedBeforeChange = false;
+    }
+    
+    /**
+     * Confirms the necessity of generation of difference macros.
+     * @return <code>true</code> the difference macros are generated, otherwise <code>false</code>
+     */
+    public boolean needDiff() {
+        long start = System.nanoTime();
+        try {
+            return checkDiff();
+        } finally {
+            RecorderStatistics.getInstance().recordSince(RecorderStatistics.Timer.NEED_DIFF, start);
+        }
+    }
+    
+    /**
+     * Generates difference macros if the document differs from the previous code.
+     * @return <code>true</code> the difference macros are generated, otherwise <code>false</code>
+     */
+    private boolean checkDiff() {
+        TextContents doc = getCurrentContents();
+        if (doc == null || bulkDepth > 0) {
+            return false;
+        }
+        
+        RecorderStatistics stats = RecorderStatistics.getInstance();
+        stats.increment(RecorderStatistics.Counter.DIFF_CHECKS);
+        if (lastDocumentMacro == null && isSynchronized(doc)) {
+            clearDirtyRegions(doc);
+            stats.increment(RecorderStatistics.Counter.DIFF_CHECKS_SKIPPED);
+            return false;
+        }
+        
+        boolean generated = recordDiff(doc, "Diff");
+        if (generated) {
+            stats.increment(RecorderStatistics.Counter.DIFFS_GENERATED);
+        }
+        return generated;
+    }
+    
+    /**
+     * Records the differences between the previous code and the document as a compound macro.
+     * @param doc the contents of the document
+     * @param type the type of the compound macro
+     * @return <code>true</code> the difference macros are generated, otherwise <code>false</code>
+     */
+    private boolean recordDiff(TextContents doc, String type) {
+        if (!dirtyRegions.isUnknown() && isRegionStamp(doc) &&
+            preCode.length() + dirtyRegions.getLengthDelta() == doc.getLength()) {
+            return recordRegionDiff(doc, type);
+        }
+        
+        if (contentEquals(preCode, doc)) {
+            clearDirtyRegions(doc);
+            if (lastDocumentMacro == null) {
+                markSynchronized(doc);
+            }
+            return false;
+        }
+        
+        String code = doc.get();
+        long time = context.getCurrentTime();
+        List<DiffMacro> macros = DiffMacroGenerator.generate(time, path, preCode.toString(), code);
+        
+        boolean generated = macros.size() > 0;
+        if (generated) {
+            recordDiffMacros(time, type, macros);
+        }
+        
+        preCode = Rope.of(code);
+        clearDirtyRegions(doc);
+        if (lastDocumentMacro == null) {
+            markSynchronized(doc);
+        }
+        return generated;
+    }
+    
+    /**
+     * Records the differences between the previous code and the document only within the regions changed since
+     * they were last the same, so that the cost does not depend on the length of the document.
+     * @param doc the contents of the document
+     * @param type the type of the compound macro
+     * @return <code>true</code> the difference macros are generated, otherwise <code>false</code>
+     */
+    private boolean recordRegionDiff(TextContents doc, String type) {
+        long time = context.getCurrentTime();
+        List<DiffMacro> macros = new ArrayList<DiffMacro>();
+        Rope code = preCode;
+        int delta = 0;
+        try {
+            for (int i = 0; i < dirtyRegions.size(); i++) {
+                int oldStart = dirtyRegions.getOldStart(i);
+                int oldEnd = dirtyRegions.getOldEnd(i);
+                int newStart = dirtyRegions.getNewStart(i);
+                String otext = preCode.substring(oldStart, oldEnd);
+                String ntext = doc.get(newStart, dirtyRegions.getNewEnd(i) - newStart);
+                if (!otext.equals(ntext)) {
+                    macros.addAll(DiffMacroGenerator.generate(time, path, newStart, otext, ntext));
+                    code = code.replace(oldStart + delta, oldEnd + delta, ntext);
+                    delta = delta + ntext.length() - otext.length();
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            dirtyRegions.invalidate();
+            return recordDiff(doc, type);
+        }
+        RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.REGION_DIFFS);
+        
+        boolean generated = macros.size() > 0;
+        if (generated) {
+            recordDiffMacros(time, type, macros);
+        }
+        
+        preCode = code;
+        clearDirtyRegions(doc);
+        if (lastDocumentMacro == null) {
+            markSynchronized(doc);
+        }
+        return generated;
+    }
+    
+    /**
+     * Starts a bulk change, such as formatting or organizing imports, that rewrites a document programmatically.
+     * Document events during the bulk change are not recorded as macros, and the whole change is recorded
+     * as difference macros when it ends. Bulk changes can be nested.
+     * @param type the type of the compound macro that will contain the difference macros
+     */
+    public void beginBulkChange(String type) {
+        if (bulkDepth == 0) {
+            flushCursorMove();
+            dumpLastDocumentMacro();
+            needDiff();
+            bulkType = type;
+        }
+        bulkDepth++;
+    }
+    
+    /**
+     * Tests if a bulk change is in progress.
+     * @return <code>true</code> if document events are folded into a bulk change, otherwise <code>false</code>
+     */
+    public boolean isBulkChanging() {
+        return bulkDepth > 0;
+    }
+    
+    /**
+     * Folds a document event into the bulk change in progress.
+     */
+    public void foldBulkEvent() {
+        RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.BULK_EVENTS_FOLDED);
+        lastAccessTime = System.nanoTime();
+    }
+    
+    /**
+     * Ends a bulk change and records its differences if the outermost one ends.
+     * @return <code>true</code> the difference macros are generated, otherwise <code>false</code>
+     */
+    public boolean endBulkChange() {
+        if (bulkDepth == 0) {
+            return false;
+        }
+        bulkDepth--;
+        if (bulkDepth > 0) {
+            return false;
+        }
+        
+        String type = bulkType;
+        bulkType = null;
+        
+        TextContents doc = getCurrentContents();
+        if (doc == null) {
+            invalidateSync();
+            dirtyRegions.invalidate();
+            return false;
+        }
+        
+        boolean generated = recordDiff(doc, type);
+        if (generated) {
+            RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.BULK_CHANGES);
+        }
+        return generated;
+    }
+    
+    /**
+     * Records difference macros.
+     * @param time the time when differences were generated
+     * @param macros the collection of difference macros
+     */
+    protected void recordDiffMacros(long time, List<DiffMacro> macros) {
+        recordDiffMacros(time, "Diff", macros);
+    }
+    
+    /**
+     * Records difference macros as a compound macro of a given type.
+     * @param time the time when differences were generated
+     * @param type the type of the compound macro
+     * @param macros the collection of difference macros
+     */
+    protected void recordDiffMacros(long time, String type, List<DiffMacro> macros) {
+        flushCursorMove();
+        dumpLastDocumentMacro();
+        
+        TriggerMacro trigger = new TriggerMacro(time, type, path, TriggerMacro.Kind.BEGIN);
+        recordRawMacro(trigger);
+        recordMacro(trigger);
+        
+        for (DiffMacro macro : macros) {
+            // System.out.println("** " + macro.toString());
+            recordRawMacro(macro);
+            recordMacro(macro);
+        }
+        
+        trigger = new TriggerMacro(time, type, path, TriggerMacro.Kind.END);
+        recordRawMacro(trigger);
+        recordMacro(trigger);
+    }
+    
+    /**
+     * Applies a specified normal operation into given code.
+     * @param macro the macro to be applied
+     */
+    protected boolean applyMacro(Macro macro) {
+        if (macro instanceof DocumentMacro) {
+            DocumentMacro dmacro = (DocumentMacro)macro;
+            
+            int start = dmacro.getStart();
+            int end = start + dmacro.getDeletedText().length();
+            String itext = dmacro.getInsertedText();
+            preCode = preCode.replace(start, end, itext);
+            dirtyRegions.codeChanged(start, end - start, itext.length());
+        }
+        return true;
+    }
+    
+    /**
+     * Tests if the deletion derives any mismatch.
+     * The deleted text is verified by comparing its hash with the hash of the same range of the code.
+     * @param code the code before the application
+     * @param macro the macro to be applied
+     * @return <code>true</code> if a mismatch exists, otherwise <code>false</code>
+     */
+    private boolean hasMismatch(Rope code, Macro macro) {
+        if (!(macro instanceof DocumentMacro)) {
+            return false;
+        }
+        
+        DocumentMacro dmacro = (DocumentMacro)macro;
+        int start = dmacro.getStart();
+        String dtext = dmacro.getDeletedText();
+        int end = start + dtext.length();
+        if (start < 0 || end > code.length()) {
+            return true;
+        }
+        
+        if (dtext.length() > 0) {
+            return code.hash(start, end) != Rope.hash(0, dtext);
+        }
+        return false;
+    }
+    
+    /**
+     * Resynchronizes the previous code with the document after a macro did not match the previous code.
+     * Differences between them are recorded once, and a diagnostic event is sent instead of the macro.
+     * Documents longer than a limit are not resynchronized here, but checked by the next difference check.
+     * @param macro the macro that did not match the previous code
+     * @param applied <code>true</code> if the document already contains the change of the macro
+     * @return <code>true</code> if the macro that was not applied to the document matches the resynchronized code,
+     * otherwise <code>false</code>
+     */
+    protected boolean resync(DocumentMacro macro, boolean applied) {
+        RecorderStatistics stats = RecorderStatistics.getInstance();
+        stats.increment(RecorderStatistics.Counter.DOCUMENT_MACROS_MISMATCHED);
+        
+        int start = macro.getStart();
+        String dtext = macro.getDeletedText();
+        int end = start + dtext.length();
+        int shadowLength = preCode.length();
+        long expectedHash = Rope.hash(0, dtext);
+        long actualHash = 0;
+        if (start >= 0 && end <= shadowLength) {
+            actualHash = preCode.hash(start, end);
+        }
+        
+        TextContents doc = getCurrentContents();
+        int docLength = doc != null ? doc.getLength() : -1;
+        long time = context.getCurrentTime();
+        boolean resynced = false;
+        int diffCount = 0;
+        
+        if (doc != null && docLength <= MAX_RESYNC_LENGTH) {
+            String code = doc.get();
+            List<DiffMacro> macros = DiffMacroGenerator.generate(time, path, preCode.toString(), code);
+            diffCount = macros.size();
+            if (diffCount > 0) {
+                recordDiffMacros(time, macros);
+            }
+            
+            preCode = Rope.of(code);
+            clearDirtyRegions(doc);
+            if (lastDocumentMacro == null) {
+                markSynchronized(doc);
+            }
+            stats.increment(RecorderStatistics.Counter.RESYNCS);
+            resynced = true;
+        } else {
+            invalidateSync();
+        }
+        
+        context.reportDiagnostic(new DiagnosticEvent(DiagnosticEvent.Kind.MISMATCH, time, path, macro, start,
+                shadowLength, docLength, expectedHash, actualHash, resynced, diffCount));
+        
+        return resynced && !applied && !hasMismatch(preCode, macro);
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import org.jtool.macrorecorder.macro.Macro;
+import org.jtool.macrorecorder.macro.ExecutionMacro;
+import org.jtool.macrorecorder.recorder.DiagnosticEvent;
+import org.jtool.macrorecorder.recorder.DiagnosticListener;
+import org.jtool.macrorecorder.recorder.MacroCompressor;
+import org.jtool.macrorecorder.recorder.MacroEvent;
+import org.jtool.macrorecorder.recorder.MacroListener;
+import org.jtool.macrorecorder.recorder.RecorderStatistics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records macros of documents that are edited without the workbench.
+ * Edits are fed through the methods of this class, and macro events are delivered to the listeners synchronously.
+ * This recorder can run on a plain JVM, so it can be used for tests and benchmarks of the recording pipeline.
+ * @author Katsuhisa Maruyama
+ */
+public class HeadlessRecorder implements RecordingContext {
+    
+    /**
+     * The collection of recorders that record document macros.
+     */
+    private Map<String, BufferRecorder> docRecorders = new ConcurrentHashMap<String, BufferRecorder>();
+    
+    /**
+     * The recorders that might have pending macros or unsynchronized document changes.
+     */
+    private Set<DocumentRecorder> dirtyDocRecorders = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * The collection of listeners that receives macro events.
+     */
+    private List<MacroListener> macroListeners = new CopyOnWriteArrayList<MacroListener>();
+    
+    /**
+     * The collection of listeners that receives diagnostic events.
+     */
+    private List<DiagnosticListener> diagnosticListeners = new CopyOnWriteArrayList<DiagnosticListener>();
+    
+    /**
+     * The compressor that compresses document macros.
+     */
+    private volatile MacroCompressor compressor = new MacroCompressor();
+    
+    /**
+     * A parent macro on which the current recorded macro dangles.
+     */
+    private volatile Macro parentMacro;
+    
+    /**
+     * A flag that indicates if successive document macros are compressed as they are on an editor.
+     */
+    private boolean compressing;
+    
+    /**
+     * Creates a recorder that compresses successive document macros.
+     */
+    public HeadlessRecorder() {
+        this(true);
+    }
+    
+    /**
+     * Creates a recorder.
+     * @param compressing <code>true</code> if successive document macros are compressed, otherwise <code>false</code>
+     */
+    public HeadlessRecorder(boolean compressing) {
+        this.compressing = compressing;
+    }
+    
+    /**
+     * Sets the compressor that compresses document macros.
+     * @param compressor the compressor, or <code>null</code> for the default one
+     */
+    public void setMacroCompressor(MacroCompressor compressor) {
+        if (compressor == null) {
+            compressor = new MacroCompressor();
+        }
+        this.compressor = compressor;
+    }
+    
+    /**
+     * Returns the compressor that compresses document macros.
+     * @return the compressor
+     */
+    @Override
+    public MacroCompressor getMacroCompressor() {
+        return compressor;
+    }
+    
+    /**
+     * Adds a listener that receives a macro event.
+     * @param listener the event listener to be added
+     */
+    public void addMacroListener(MacroListener listener) {
+        macroListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener that receives a macro event.
+     * @param listener the event listener to be removed
+     */
+    public void removeMacroListener(MacroListener listener) {
+        macroListeners.remove(listener);
+    }
+    
+    /**
+     * Adds a listener that receives a diagnostic event.
+     * @param listener the event listener to be added
+     */
+    public void addDiagnosticListener(DiagnosticListener listener) {
+        diagnosticListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener that receives a diagnostic event.
+     * @param listener the event listener to be removed
+     */
+    public void removeDiagnosticListener(DiagnosticListener listener) {
+        diagnosticListeners.remove(listener);
+    }
+    
+    /**
+     * Opens a document and starts the recording of its macros.
+     * @param path the path of the file
+     * @param text the initial contents of the document
+     * @return the document
+     */
+    public TextBuffer open(String path, String text) {
+        close(path);
+        
+        BufferRecorder docRecorder = new BufferRecorder(path, new TextBuffer(text));
+        docRecorders.put(path, docRecorder);
+        docRecorder.start();
+        return docRecorder.buffer;
+    }
+    
+    /**
+     * Stops the recording of macros of a document.
+     * @param path the path of the file
+     */
+    public void close(String path) {
+        BufferRecorder docRecorder = docRecorders.get(path);
+        if (docRecorder != null) {
+            docRecorder.stop();
+            removeRecorder(path);
+        }
+    }
+    
+    /**
+     * Stops the recording of macros of all documents.
+     */
+    public void close() {
+        for (String path : new ArrayList<String>(docRecorders.keySet())) {
+            close(path);
+        }
+    }
+    
+    /**
+     * Returns the document of a file.
+     * @param path the path of the file
+     * @return the document, or <code>null</code> if the file is not opened
+     */
+    public TextBuffer getDocument(String path) {
+        BufferRecorder docRecorder = docRecorders.get(path);
+        if (docRecorder != null) {
+            return docRecorder.buffer;
+        }
+        return null;
+    }
+    
+    /**
+     * Returns a recorder that records document macros related to a file.
+     * @param path the path of the file
+     * @return the recorder, or <code>null</code> if none
+     */
+    public DocumentRecorder getDocRecorder(String path) {
+        return docRecorders.get(path);
+    }
+    
+    /**
+     * Replaces a part of a document as an edit on an editor does.
+     * @param path the path of the file
+     * @param offset the offset of the replaced text
+     * @param length the length of the replaced text
+     * @param text the text that replaces the part
+     */
+    public void replace(String path, int offset, int length, String text) {
+        BufferRecorder docRecorder = getBufferRecorder(path);
+        docRecorder.handler.documentAboutToBeChanged(docRecorder.buffer, offset, length, text);
+        docRecorder.buffer.replace(offset, length, text);
+        docRecorder.handler.documentChanged(docRecorder.buffer);
+    }
+    
+    /**
+     * Notifies that an undo will be performed on a document.
+     * @param path the path of the file
+     */
+    public void aboutToUndo(String path) {
+        getBufferRecorder(path).handler.aboutToUndo();
+    }
+    
+    /**
+     * Notifies that an undo has been performed on a document.
+     * @param path the path of the file
+     */
+    public void undone(String path) {
+        getBufferRecorder(path).handler.undone();
+    }
+    
+    /**
+     * Notifies that a redo will be performed on a document.
+     * @param path the path of the file
+     */
+    public void aboutToRedo(String path) {
+        getBufferRecorder(path).handler.aboutToRedo();
+    }
+    
+    /**
+     * Notifies that a redo has been performed on a document.
+     * @param path the path of the file
+     */
+    public void redone(String path) {
+        getBufferRecorder(path).handler.redone();
+    }
+    
+    /**
+     * Notifies that the cursor position on a document has been changed.
+     * @param path the path of the file
+     */
+    public void cursorMoved(String path) {
+        getBufferRecorder(path).handler.cursorMoved();
+    }
+    
+    /**
+     * Records the execution of a command on a document.
+     * @param path the path of the file
+     * @param commandId the identifier of the command
+     */
+    public void executeCommand(String path, String commandId) {
+        breakMacro();
+        
+        ExecutionMacro macro = new ExecutionMacro(getCurrentTime(), "Exec", path, commandId);
+        BufferRecorder docRecorder = getBufferRecorder(path);
+        docRecorder.recordExecutionMacro(macro);
+        
+        String type = BulkCommands.getType(commandId);
+        if (type != null) {
+            docRecorder.beginBulkChange(type);
+        }
+    }
+    
+    /**
+     * Receives a command that has completed its execution on a document.
+     * The changes by a command that rewrites the document are recorded as one compound macro.
+     * @param path the path of the file
+     * @param commandId the identifier of the command
+     */
+    public void commandExecuted(String path, String commandId) {
+        if (BulkCommands.getType(commandId) != null) {
+            getBufferRecorder(path).endBulkChange();
+        }
+    }
+    
+    /**
+     * Break the current macro stored in all documents.
+     */
+    public void breakMacro() {
+        DocumentRecorder.breakDirtyMacros(this);
+    }
+    
+    /**
+     * Returns the recorder of an opened document.
+     * @param path the path of the file
+     * @return the recorder
+     */
+    private BufferRecorder getBufferRecorder(String path) {
+        BufferRecorder docRecorder = docRecorders.get(path);
+        if (docRecorder == null) {
+            throw new IllegalStateException("Not opened: " + path);
+        }
+        return docRecorder;
+    }
+    
+    /**
+     * Obtains the current time.
+     * @return the current time in milliseconds
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+    
+    /**
+     * Sends a macro event to all the listeners.
+     * @param macro the macro sent to the listeners
+     */
+    @Override
+    public void notifyMacro(Macro macro) {
+        long start = System.nanoTime();
+        MacroEvent evt = new MacroEvent(MacroEvent.GENERIC_MACRO, macro);
+        for (MacroListener listener : macroListeners) {
+            listener.macroAdded(evt);
+        }
+        macro.releaseRawMacros();
+        RecorderStatistics.getInstance().recordSince(RecorderStatistics.Timer.NOTIFY_MACRO, start);
+    }
+    
+    /**
+     * Sends a raw macro event to all the listeners.
+     * @param macro the macro sent to the listeners
+     */
+    @Override
+    public void notifyRawMacro(Macro macro) {
+        MacroEvent evt = new MacroEvent(MacroEvent.RAW_MACRO, macro);
+        for (MacroListener listener : macroListeners) {
+            listener.documentChanged(evt);
+        }
+    }
+    
+    /**
+     * Sends a diagnostic event to all the listeners.
+     * @param evt the diagnostic event
+     */
+    @Override
+    public void reportDiagnostic(DiagnosticEvent evt) {
+        for (DiagnosticListener listener : diagnosticListeners) {
+            listener.diagnosticReported(evt);
+        }
+    }
+    
+    /**
+     * Returns the parent macro on which the current recorded macro dangles.
+     * @return the parent macro, or <code>null</code> if none
+     */
+    @Override
+    public Macro getParentMacro() {
+        return parentMacro;
+    }
+    
+    /**
+     * Sets the parent macro on which the current recorded macro dangles.
+     * @param parent the parent macro, or <code>null</code> if no parent exists
+     */
+    @Override
+    public void setParentMacro(Macro parent) {
+        parentMacro = parent;
+    }
+    
+    /**
+     * Marks a recorder that might have pending macros or unsynchronized document changes.
+     * @param docRecorder the recorder
+     */
+    @Override
+    public void markDirty(DocumentRecorder docRecorder) {
+        dirtyDocRecorders.add(docRecorder);
+    }
+    
+    /**
+     * Unmarks a recorder that has no pending macro and no unsynchronized document change.
+     * @param docRecorder the recorder
+     * @return <code>true</code> if the recorder was marked, otherwise <code>false</code>
+     */
+    @Override
+    public boolean unmarkDirty(DocumentRecorder docRecorder) {
+        return dirtyDocRecorders.remove(docRecorder);
+    }
+    
+    /**
+     * Returns the recorders that might have pending macros or unsynchronized document changes.
+     * @return the snapshot of the collection of the recorders
+     */
+    @Override
+    public List<DocumentRecorder> getDirtyRecorders() {
+        return new ArrayList<DocumentRecorder>(dirtyDocRecorders);
+    }
+    
+    /**
+     * Removes the recorder related to a file.
+     * @param path the path of the file
+     */
+    @Override
+    public void removeRecorder(String path) {
+        if (path == null) {
+            return;
+        }
+        
+        DocumentRecorder docRecorder = docRecorders.remove(path);
+        if (docRecorder != null) {
+            dirtyDocRecorders.remove(docRecorder);
+        }
+    }
+    
+    /**
+     * Records document macros of a document stored in a buffer.
+     */
+    private class BufferRecorder extends DocumentRecorder {
+        
+        /**
+         * The document of the file.
+         */
+        private TextBuffer buffer;
+        
+        /**
+         * The handler that converts changes of the document into macros.
+         */
+        private DocumentEventHandler handler;
+        
+        /**
+         * Creates an object that records document macros of a document.
+         * @param path the path of the file
+         * @param buffer the document of the file
+         */
+        BufferRecorder(String path, TextBuffer buffer) {
+            super(path, HeadlessRecorder.this);
+            this.buffer = buffer;
+            this.handler = new DocumentEventHandler(this);
+        }
+        
+        /**
+         * Tests if successive document macros are compressed.
+         * @return <code>true</code> if the macros are compressed, otherwise <code>false</code>
+         */
+        @Override
+        protected boolean isCompressing() {
+            return compressing;
+        }
+        
+        /**
+         * Obtains the current contents of the document.
+         * @return the contents of the document
+         */
+        @Override
+        protected TextContents getCurrentContents() {
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import org.jtool.macrorecorder.macro.Macro;
+import org.jtool.macrorecorder.recorder.DiagnosticEvent;
+import org.jtool.macrorecorder.recorder.MacroCompressor;
+import java.util.List;
+
+/**
+ * Provides the services that document recorders need from the environment in which they run.
+ * @author Katsuhisa Maruyama
+ */
+public interface RecordingContext {
+    
+    /**
+     * Obtains the current time.
+     * @return the current time in milliseconds
+     */
+    public long getCurrentTime();
+    
+    /**
+     * Sends a macro to the listeners.
+     * @param macro the macro
+     */
+    public void notifyMacro(Macro macro);
+    
+    /**
+     * Sends a raw macro to the listeners.
+     * @param macro the raw macro
+     */
+    public void notifyRawMacro(Macro macro);
+    
+    /**
+     * Sends a diagnostic event to the listeners.
+     * @param evt the diagnostic event
+     */
+    public void reportDiagnostic(DiagnosticEvent evt);
+    
+    /**
+     * Returns the compressor that compresses document macros.
+     * @return the compressor
+     */
+    public MacroCompressor getMacroCompressor();
+    
+    /**
+     * Returns the parent macro on which the current recorded macro dangles.
+     * @return the parent macro, or <code>null</code> if none
+     */
+    public Macro getParentMacro();
+    
+    /**
+     * Sets the parent macro on which the current recorded macro dangles.
+     * @param parent the parent macro, or <code>null</code> if no parent exists
+     */
+    public void setParentMacro(Macro parent);
+    
+    /**
+     * Marks a recorder that might have pending macros or unsynchronized document changes.
+     * @param docRecorder the recorder
+     */
+    public void markDirty(DocumentRecorder docRecorder);
+    
+    /**
+     * Unmarks a recorder that has no pending macro and no unsynchronized document change.
+     * @param docRecorder the recorder
+     * @return <code>true</code> if the recorder was marked, otherwise <code>false</code>
+     */
+    public boolean unmarkDirty(DocumentRecorder docRecorder);
+    
+    /**
+     * Returns the recorders that might have pending macros or unsynchronized document changes.
+     * @return the snapshot of the collection of the recorders
+     */
+    public List<DocumentRecorder> getDirtyRecorders();
+    
+    /**
+     * Removes the recorder related to a file that was removed.
+     * @param path the path of the file
+     */
+    public void removeRecorder(String path);
+}
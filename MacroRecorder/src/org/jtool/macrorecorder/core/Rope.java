@@ -0,0 +1,533 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores immutable text as a height-balanced tree of short chunks.
+ * A splice only rebuilds the nodes along the path to the changed chunks,
+ * so it costs O(log n) instead of copying the whole text.
+ * @author Katsuhisa Maruyama
+ */
+public class Rope implements CharSequence {
+    
+    /**
+     * The maximum number of characters stored in a single chunk.
+     */
+    static final int LEAF_SIZE = 512;
+    
+    /**
+     * The base of the polynomial hash of the text.
+     */
+    private static final long HASH_BASE = 1099511628211L;
+    
+    /**
+     * The empty text.
+     */
+    public static final Rope EMPTY = new Rope(null);
+    
+    /**
+     * The root node of the tree, or <code>null</code> if the text is empty.
+     */
+    private final Node root;
+    
+    /**
+     * Creates a rope with a given root node.
+     * @param root the root node, or <code>null</code> for the empty text
+     */
+    private Rope(Node root) {
+        this.root = root;
+    }
+    
+    /**
+     * Creates a rope that stores a given text.
+     * @param text the text
+     * @return the created rope
+     */
+    public static Rope of(String text) {
+        if (text == null || text.length() == 0) {
+            return EMPTY;
+        }
+        return new Rope(build(text));
+    }
+    
+    /**
+     * Returns the number of characters of this text.
+     * @return the length of the text
+     */
+    @Override
+    public int length() {
+        return length(root);
+    }
+    
+    /**
+     * Returns the character at a given offset.
+     * @param index the offset of the character
+     * @return the character at the offset
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch)node;
+            if (index < branch.left.length) {
+                node = branch.left;
+            } else {
+                index = index - branch.left.length;
+                node = branch.right;
+            }
+        }
+        return ((Leaf)node).text.charAt(index);
+    }
+    
+    /**
+     * Returns a part of this text.
+     * @param start the start offset, inclusive
+     * @param end the end offset, exclusive
+     * @return the text between the offsets
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+    
+    /**
+     * Returns a part of this text as a string.
+     * @param start the start offset, inclusive
+     * @param end the end offset, exclusive
+     * @return the text between the offsets
+     */
+    public String substring(int start, int end) {
+        checkRange(start, end);
+        
+        StringBuilder buf = new StringBuilder(end - start);
+        append(root, start, end, buf);
+        return buf.toString();
+    }
+    
+    /**
+     * Returns a new rope whose text between the given offsets is replaced with a given text.
+     * @param start the start offset of the replaced text, inclusive
+     * @param end the end offset of the replaced text, exclusive
+     * @param text the text to be inserted
+     * @return the rope after the replacement
+     */
+    public Rope replace(int start, int end, String text) {
+        checkRange(start, end);
+        
+        if (start == end && (text == null || text.length() == 0)) {
+            return this;
+        }
+        
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        Node middle = (text == null || text.length() == 0) ? null : build(text);
+        return new Rope(concat(concat(head[0], middle), tail[1]));
+    }
+    
+    /**
+     * Returns the polynomial hash of the whole text, which is maintained by every splice.
+     * The value equals to the one <code>hash(0, text)</code> returns for the same text.
+     * @return the hash value
+     */
+    public long hash() {
+        return root == null ? 0 : root.hash;
+    }
+    
+    /**
+     * Returns the polynomial hash of a part of the text.
+     * The hashes cached in the tree are reused, so only the chunks at both ends of the part are scanned.
+     * The value equals to the one <code>hash(0, substring(start, end))</code> returns.
+     * @param start the start offset, inclusive
+     * @param end the end offset, exclusive
+     * @return the hash value
+     */
+    public long hash(int start, int end) {
+        checkRange(start, end);
+        return hash(root, start, end, 0);
+    }
+    
+    /**
+     * Extends the polynomial hash of a text with the characters appended to it.
+     * @param hash the hash value of the former text
+     * @param text the appended text
+     * @return the hash value of the concatenated text
+     */
+    public static long hash(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = hash * HASH_BASE + text.charAt(i);
+        }
+        return hash;
+    }
+    
+    /**
+     * Tests if the text starting at a given offset equals to a given text.
+     * @param offset the offset where the comparison starts
+     * @param text the text to be compared
+     * @return <code>true</code> if the texts are the same, otherwise <code>false</code>
+     */
+    public boolean regionMatches(int offset, String text) {
+        if (offset < 0 || offset + text.length() > length()) {
+            return false;
+        }
+        return matches(root, offset, text, 0, text.length());
+    }
+    
+    /**
+     * Returns the whole text of this rope.
+     * @return the text
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(length());
+        append(root, 0, length(), buf);
+        return buf.toString();
+    }
+    
+    /**
+     * Checks if the given offsets are valid in this text.
+     * @param start the start offset
+     * @param end the end offset
+     */
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(start + "-" + end + " in " + length());
+        }
+    }
+    
+    /**
+     * Returns the length of the text under a node.
+     * @param node the node
+     * @return the length of the text
+     */
+    private static int length(Node node) {
+        return node == null ? 0 : node.length;
+    }
+    
+    /**
+     * Returns the height of a node.
+     * @param node the node
+     * @return the height of the node
+     */
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+    
+    /**
+     * Builds a balanced tree that stores a given text.
+     * @param text the text
+     * @return the root node of the tree
+     */
+    private static Node build(String text) {
+        List<Node> nodes = new ArrayList<Node>();
+        for (int offset = 0; offset < text.length(); offset = offset + LEAF_SIZE) {
+            nodes.add(new Leaf(text.substring(offset, Math.min(offset + LEAF_SIZE, text.length()))));
+        }
+        return build(nodes, 0, nodes.size());
+    }
+    
+    /**
+     * Builds a balanced tree from the sequence of nodes.
+     * @param nodes the nodes
+     * @param from the index of the first node, inclusive
+     * @param to the index of the last node, exclusive
+     * @return the root node of the tree
+     */
+    private static Node build(List<Node> nodes, int from, int to) {
+        if (to - from == 1) {
+            return nodes.get(from);
+        }
+        int mid = (from + to) >>> 1;
+        return new Branch(build(nodes, from, mid), build(nodes, mid, to));
+    }
+    
+    /**
+     * Concatenates two trees, keeping the result height-balanced.
+     * @param left the left tree
+     * @param right the right tree
+     * @return the concatenated tree
+     */
+    private static Node concat(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch)left;
+            return balance(branch.left, concat(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch)right;
+            return balance(concat(left, branch.left), branch.right);
+        }
+        
+        if (left instanceof Leaf && right instanceof Leaf && left.length + right.length <= LEAF_SIZE) {
+            return new Leaf(((Leaf)left).text + ((Leaf)right).text);
+        }
+        return new Branch(left, right);
+    }
+    
+    /**
+     * Creates a branch from two trees whose heights differ by two at most.
+     * @param left the left tree
+     * @param right the right tree
+     * @return the balanced tree
+     */
+    private static Node balance(Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            Branch branch = (Branch)left;
+            if (height(branch.left) >= height(branch.right)) {
+                return new Branch(branch.left, new Branch(branch.right, right));
+            }
+            Branch inner = (Branch)branch.right;
+            return new Branch(new Branch(branch.left, inner.left), new Branch(inner.right, right));
+        }
+        
+        if (height(right) > height(left) + 1) {
+            Branch branch = (Branch)right;
+            if (height(branch.right) >= height(branch.left)) {
+                return new Branch(new Branch(left, branch.left), branch.right);
+            }
+            Branch inner = (Branch)branch.left;
+            return new Branch(new Branch(left, inner.left), new Branch(inner.right, branch.right));
+        }
+        return new Branch(left, right);
+    }
+    
+    /**
+     * Splits a tree at a given offset.
+     * @param node the root node of the tree
+     * @param index the offset where the tree is split
+     * @return the two trees before and after the offset
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        if (index == 0) {
+            return new Node[] { null, node };
+        }
+        if (index == node.length) {
+            return new Node[] { node, null };
+        }
+        
+        if (node instanceof Leaf) {
+            String text = ((Leaf)node).text;
+            return new Node[] { new Leaf(text.substring(0, index)), new Leaf(text.substring(index)) };
+        }
+        
+        Branch branch = (Branch)node;
+        if (index <= branch.left.length) {
+            Node[] nodes = split(branch.left, index);
+            return new Node[] { nodes[0], concat(nodes[1], branch.right) };
+        }
+        Node[] nodes = split(branch.right, index - branch.left.length);
+        return new Node[] { concat(branch.left, nodes[0]), nodes[1] };
+    }
+    
+    /**
+     * Appends the text of a tree between the given offsets to a buffer.
+     * @param node the root node of the tree
+     * @param start the start offset, inclusive
+     * @param end the end offset, exclusive
+     * @param buf the buffer
+     */
+    private static void append(Node node, int start, int end, StringBuilder buf) {
+        if (node == null || start >= end) {
+            return;
+        }
+        
+        if (node instanceof Leaf) {
+            buf.append(((Leaf)node).text, start, end);
+            return;
+        }
+        
+        Branch branch = (Branch)node;
+        int mid = branch.left.length;
+        if (start < mid) {
+            append(branch.left, start, Math.min(end, mid), buf);
+        }
+        if (end > mid) {
+            append(branch.right, Math.max(start, mid) - mid, end - mid, buf);
+        }
+    }
+    
+    /**
+     * Extends a hash with a part of the text of a tree.
+     * @param node the root node of the tree
+     * @param start the start offset, inclusive
+     * @param end the end offset, exclusive
+     * @param hash the hash value of the former text
+     * @return the hash value of the concatenated text
+     */
+    private static long hash(Node node, int start, int end, long hash) {
+        if (node == null || start >= end) {
+            return hash;
+        }
+        
+        if (start == 0 && end == node.length) {
+            return hash * node.power + node.hash;
+        }
+        
+        if (node instanceof Leaf) {
+            String text = ((Leaf)node).text;
+            for (int i = start; i < end; i++) {
+                hash = hash * HASH_BASE + text.charAt(i);
+            }
+            return hash;
+        }
+        
+        Branch branch = (Branch)node;
+        int mid = branch.left.length;
+        if (start < mid) {
+            hash = hash(branch.left, start, Math.min(end, mid), hash);
+        }
+        if (end > mid) {
+            hash = hash(branch.right, Math.max(start, mid) - mid, end - mid, hash);
+        }
+        return hash;
+    }
+    
+    /**
+     * Tests if the text of a tree matches a part of a given text.
+     * @param node the root node of the tree
+     * @param offset the offset in the tree where the comparison starts
+     * @param text the text to be compared
+     * @param from the start offset in the text, inclusive
+     * @param to the end offset in the text, exclusive
+     * @return <code>true</code> if the texts are the same, otherwise <code>false</code>
+     */
+    private static boolean matches(Node node, int offset, String text, int from, int to) {
+        if (from >= to) {
+            return true;
+        }
+        
+        if (node instanceof Leaf) {
+            return ((Leaf)node).text.regionMatches(offset, text, from, to - from);
+        }
+        
+        Branch branch = (Branch)node;
+        int mid = branch.left.length;
+        if (offset >= mid) {
+            return matches(branch.right, offset - mid, text, from, to);
+        }
+        
+        int count = Math.min(to - from, mid - offset);
+        return matches(branch.left, offset, text, from, from + count) &&
+               matches(branch.right, 0, text, from + count, to);
+    }
+    
+    /**
+     * A node of the tree.
+     */
+    private static abstract class Node {
+        
+        /**
+         * The number of characters under this node.
+         */
+        final int length;
+        
+        /**
+         * The height of this node.
+         */
+        final int height;
+        
+        /**
+         * The polynomial hash of the text under this node.
+         */
+        final long hash;
+        
+        /**
+         * The base of the hash raised to the power of the length of the text under this node.
+         */
+        final long power;
+        
+        /**
+         * Creates a node.
+         * @param length the number of characters under the node
+         * @param height the height of the node
+         * @param hash the hash of the text under the node
+         * @param power the base of the hash raised to the power of the length
+         */
+        Node(int length, int height, long hash, long power) {
+            this.length = length;
+            this.height = height;
+            this.hash = hash;
+            this.power = power;
+        }
+    }
+    
+    /**
+     * A node that stores a chunk of the text.
+     */
+    private static class Leaf extends Node {
+        
+        /**
+         * The chunk of the text.
+         */
+        final String text;
+        
+        /**
+         * Creates a node storing a chunk of the text.
+         * @param text the chunk
+         */
+        Leaf(String text) {
+            super(text.length(), 0, Rope.hash(0, text), power(text.length()));
+            this.text = text;
+        }
+        
+        /**
+         * Calculates the base of the hash raised to the power of a given length.
+         * @param length the length
+         * @return the calculated value
+         */
+        private static long power(int length) {
+            long power = 1;
+            for (int i = 0; i < length; i++) {
+                power = power * HASH_BASE;
+            }
+            return power;
+        }
+    }
+    
+    /**
+     * A node that concatenates two trees.
+     */
+    private static class Branch extends Node {
+        
+        /**
+         * The tree storing the former text.
+         */
+        final Node left;
+        
+        /**
+         * The tree storing the latter text.
+         */
+        final Node right;
+        
+        /**
+         * Creates a node concatenating two trees.
+         * @param left the tree storing the former text
+         * @param right the tree storing the latter text
+         */
+        Branch(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1,
+                  left.hash * right.power + right.hash, left.power * right.power);
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+/**
+ * Stores the contents of a document that is edited without any editor.
+ * @author Katsuhisa Maruyama
+ */
+public class TextBuffer implements TextContents {
+    
+    /**
+     * The contents of the document.
+     */
+    private StringBuilder text;
+    
+    /**
+     * The modification stamp that is increased whenever the document is changed.
+     */
+    private long stamp = 0;
+    
+    /**
+     * Creates a document with given contents.
+     * @param text the initial contents of the document
+     */
+    public TextBuffer(String text) {
+        this.text = new StringBuilder(text);
+    }
+    
+    /**
+     * Returns the number of characters of the document.
+     * @return the length of the document
+     */
+    @Override
+    public int getLength() {
+        return text.length();
+    }
+    
+    /**
+     * Returns a part of the contents of the document.
+     * @param offset the offset of the part
+     * @param length the length of the part
+     * @return the contents of the part
+     */
+    @Override
+    public String get(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > text.length()) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        return text.substring(offset, offset + length);
+    }
+    
+    /**
+     * Returns the whole contents of the document.
+     * @return the contents of the document
+     */
+    @Override
+    public String get() {
+        return text.toString();
+    }
+    
+    /**
+     * Returns the modification stamp of the document.
+     * @return the modification stamp
+     */
+    @Override
+    public long getModificationStamp() {
+        return stamp;
+    }
+    
+    /**
+     * Replaces a part of the contents of the document.
+     * No document event is sent, so this method can be used to simulate changes made outside editors.
+     * @param offset the offset of the replaced text
+     * @param length the length of the replaced text
+     * @param str the text that replaces the part
+     */
+    public void replace(int offset, int length, String str) {
+        if (offset < 0 || length < 0 || offset + length > text.length()) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        text.replace(offset, offset + length, str != null ? str : "");
+        stamp++;
+    }
+    
+    /**
+     * Replaces the whole contents of the document.
+     * @param str the new contents
+     */
+    public void set(String str) {
+        replace(0, text.length(), str);
+    }
+}
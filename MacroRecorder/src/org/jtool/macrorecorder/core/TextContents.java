@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.core;
+
+/**
+ * Provides the contents of a document under recording, independently of any editor.
+ * @author Katsuhisa Maruyama
+ */
+public interface TextContents {
+    
+    /**
+     * The value returned when the modification stamp of a document is not available.
+     */
+    public static final long UNKNOWN_MODIFICATION_STAMP = -1;
+    
+    /**
+     * Returns the number of characters of the document.
+     * @return the length of the document
+     */
+    public int getLength();
+    
+    /**
+     * Returns a part of the contents of the document.
+     * @param offset the offset of the part
+     * @param length the length of the part
+     * @return the contents of the part
+     * @throws IndexOutOfBoundsException if the part is not within the document
+     */
+    public String get(int offset, int length);
+    
+    /**
+     * Returns the whole contents of the document.
+     * @return the contents of the document
+     */
+    public String get();
+    
+    /**
+     * Returns the modification stamp of the document, which changes whenever the document is changed.
+     * @return the modification stamp, or <code>UNKNOWN_MODIFICATION_STAMP</code> if it is not available
+     */
+    public long getModificationStamp();
+}
@@ -0,0 +1,642 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the differences between two texts.
+ * The differences are found by the linear-space algorithm of Myers on character arrays,
+ * after a patience diff of the lines has narrowed large texts down to their changed blocks of lines,
+ * and are cleaned up in the same way as <code>diff_cleanupEfficiency</code> of diff-match-patch.
+ * When the changed blocks are large in total, they are compared concurrently in chunks and stitched in order,
+ * which yields the same result as comparing them one by one.
+ * An engine can be shared by threads, since it keeps no state of each computation.
+ * Each computation can be given its own deadline and edit cost; when the deadline passes, the best edits found so far
+ * are returned and marked as not exact.
+ * The size, quality and elapsed time of each computation are reported to the listener of the engine, if any.
+ * @author Katsuhisa Maruyama
+ */
+public class DiffEngine {
+    
+    /**
+     * The default cost of an empty edit operation in terms of edit characters.
+     */
+    public static final int DEFAULT_EDIT_COST = 4;
+    
+    /**
+     * The default number of milliseconds spent on a computation before it gives up finding the shortest edits.
+     */
+    public static final long DEFAULT_TIMEOUT = 1000;
+    
+    /**
+     * The number of the differing characters of both texts above which the lines are compared first.
+     */
+    static final int LINE_MODE_THRESHOLD = 1024;
+    
+    /**
+     * The number of the characters of the changed blocks above which the blocks are compared concurrently.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    
+    /**
+     * The number of the characters of the changed blocks compared by one task.
+     */
+    static final int CHUNK_SIZE = 1 << 14;
+    
+    /**
+     * The cost of an empty edit operation in terms of edit characters.
+     */
+    private int editCost = DEFAULT_EDIT_COST;
+    
+    /**
+     * The number of milliseconds spent on a computation before it gives up finding the shortest edits.
+     */
+    private long timeout = DEFAULT_TIMEOUT;
+    
+    /**
+     * The pool that compares the changed blocks concurrently, or <code>null</code> if they are compared sequentially.
+     */
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    /**
+     * The listener that receives the results of the computations, or <code>null</code> if none.
+     */
+    private volatile DiffListener listener;
+    
+    /**
+     * Creates an engine with the default edit cost and timeout.
+     */
+    public DiffEngine() {
+    }
+    
+    /**
+     * Sets the cost of an empty edit operation, which decides how short equalities are absorbed into the edits around them.
+     * @param cost the edit cost in terms of edit characters
+     */
+    public void setEditCost(int cost) {
+        editCost = cost;
+    }
+    
+    /**
+     * Returns the cost of an empty edit operation.
+     * @return the edit cost in terms of edit characters
+     */
+    public int getEditCost() {
+        return editCost;
+    }
+    
+    /**
+     * Sets the time spent on a computation before the remaining differences are reported as one replacement.
+     * @param millis the timeout in milliseconds, or <code>0</code> for no timeout
+     */
+    public void setTimeout(long millis) {
+        timeout = millis;
+    }
+    
+    /**
+     * Returns the time spent on a computation before the remaining differences are reported as one replacement.
+     * @return the timeout in milliseconds, or <code>0</code> for no timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Sets the pool that compares the changed blocks of large texts concurrently.
+     * @param pool the pool, or <code>null</code> to compare the blocks sequentially
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Returns the pool that compares the changed blocks of large texts concurrently.
+     * @return the pool, or <code>null</code> if the blocks are compared sequentially
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Sets the listener that receives the size, quality and elapsed time of each computation.
+     * @param listener the listener, or <code>null</code> to remove the current one
+     */
+    public void setListener(DiffListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Returns the listener that receives the results of the computations.
+     * @return the listener, or <code>null</code> if none
+     */
+    public DiffListener getListener() {
+        return listener;
+    }
+    
+    /**
+     * Finds the differences between two texts.
+     * @param otext the old text
+     * @param ntext the new text
+     * @return the edits that transform the old text into the new one
+     */
+    public EditScript diff(String otext, String ntext) {
+        return diff(otext.toCharArray(), ntext.toCharArray());
+    }
+    
+    /**
+     * Finds the differences between two texts by a given deadline.
+     * @param otext the old text
+     * @param ntext the new text
+     * @param deadline the time in nanoseconds, obtained by <code>System.nanoTime</code>, after which the search gives up
+     * @param editCost the cost of an empty edit operation in terms of edit characters
+     * @return the edits that transform the old text into the new one
+     */
+    public EditScript diff(String otext, String ntext, long deadline, int editCost) {
+        return diff(otext.toCharArray(), ntext.toCharArray(), deadline, editCost);
+    }
+    
+    /**
+     * Finds the differences between two texts.
+     * The arrays are referred to by the returned script and must not be modified.
+     * @param a the old text
+     * @param b the new text
+     * @return the edits that transform the old text into the new one
+     */
+    public EditScript diff(char[] a, char[] b) {
+        return diff(a, b, getDeadline(timeout), editCost);
+    }
+    
+    /**
+     * Finds the differences between two texts by a given deadline.
+     * The arrays are referred to by the returned script and must not be modified.
+     * @param a the old text
+     * @param b the new text
+     * @param deadline the time in nanoseconds, obtained by <code>System.nanoTime</code>, after which the search gives up
+     * @param editCost the cost of an empty edit operation in terms of edit characters
+     * @return the edits that transform the old text into the new one
+     */
+    public EditScript diff(char[] a, char[] b, long deadline, int editCost) {
+        long start = System.nanoTime();
+        Segments segments = new Segments(a, b);
+        Bisector bisector = new Bisector(a, b, segments, deadline);
+        
+        int prefix = 0;
+        int max = Math.min(a.length, b.length);
+        while (prefix < max && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        max = max - prefix;
+        while (suffix < max && a[a.length - suffix - 1] == b[b.length - suffix - 1]) {
+            suffix++;
+        }
+        
+        if (a.length + b.length - (prefix + suffix) * 2 > LINE_MODE_THRESHOLD) {
+            while (prefix > 0 && a[prefix - 1] != '\n') {
+                prefix--;
+            }
+            while (suffix > 0 && a[a.length - suffix - 1] != '\n') {
+                suffix--;
+            }
+            LineDiff lines = new LineDiff(a, prefix, a.length - suffix, b, prefix, b.length - suffix);
+            lines.compute();
+            segments.add(Segments.EQUAL, prefix);
+            refine(lines, segments, bisector, deadline);
+            segments.add(Segments.EQUAL, suffix);
+        } else {
+            bisector.compute(0, a.length, 0, b.length);
+        }
+        
+        segments.cleanupMerge();
+        segments.cleanupEfficiency(editCost);
+        EditScript script = toEditScript(a, b, segments, bisector.exact);
+        
+        DiffListener listener = this.listener;
+        if (listener != null) {
+            listener.diffComputed(a.length + b.length, script.isExact(), System.nanoTime() - start);
+        }
+        return script;
+    }
+    
+    /**
+     * Returns the deadline of a computation that starts now.
+     * @param millis the time allowed for the computation in milliseconds, or <code>0</code> for no limit
+     * @return the deadline in nanoseconds, comparable with <code>System.nanoTime</code>
+     */
+    public static long getDeadline(long millis) {
+        if (millis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return System.nanoTime() + millis * 1000000L;
+    }
+    
+    /**
+     * Compares the changed blocks of lines character by character and appends the results to the segments.
+     * @param lines the equal runs and changed blocks of lines
+     * @param segments the segments that receive the found alignment
+     * @param bisector the object that compares the blocks sequentially
+     * @param deadline the time in nanoseconds after which the search gives up
+     */
+    private void refine(LineDiff lines, Segments segments, Bisector bisector, long deadline) {
+        int count = lines.getBlockCount();
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total = total + lines.getBlockLength(i);
+        }
+        
+        ForkJoinPool pool = this.pool;
+        if (pool == null || pool.getParallelism() < 2 || count < 2 || total < PARALLEL_THRESHOLD) {
+            new Chunk(lines, 0, count, bisector).compute();
+            
+        } else {
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            int from = 0;
+            while (from < count) {
+                int to = from;
+                long size = 0;
+                while (to < count && size < CHUNK_SIZE) {
+                    size = size + lines.getBlockLength(to);
+                    to++;
+                }
+                Segments result = new Segments(bisector.a, bisector.b);
+                chunks.add(new Chunk(lines, from, to, new Bisector(bisector.a, bisector.b, result, deadline)));
+                from = to;
+            }
+            
+            for (Chunk chunk : chunks) {
+                pool.execute(chunk);
+            }
+            for (Chunk chunk : chunks) {
+                chunk.join();
+                segments.addAll(chunk.bisector.segments);
+                bisector.exact = bisector.exact && chunk.bisector.exact;
+            }
+        }
+        segments.add(Segments.EQUAL, lines.getEqualLength(count));
+    }
+    
+    /**
+     * Converts segments into an edit script.
+     * @param a the old text
+     * @param b the new text
+     * @param segments the segments of the alignment of the texts
+     * @param exact <code>true</code> if the search finished before its deadline
+     * @return the edit script
+     */
+    static EditScript toEditScript(char[] a, char[] b, Segments segments, boolean exact) {
+        int n = segments.size();
+        boolean[] insertions = new boolean[n];
+        int[] oldOffsets = new int[n];
+        int[] newOffsets = new int[n];
+        int[] lengths = new int[n];
+        
+        int size = 0;
+        int aPos = 0;
+        int bPos = 0;
+        for (int i = 0; i < n; i++) {
+            byte op = segments.getOp(i);
+            int len = segments.getLength(i);
+            if (op != Segments.EQUAL) {
+                insertions[size] = op == Segments.INSERT;
+                oldOffsets[size] = aPos;
+                newOffsets[size] = bPos;
+                lengths[size] = len;
+                size++;
+            }
+            if (op != Segments.INSERT) {
+                aPos = aPos + len;
+            }
+            if (op != Segments.DELETE) {
+                bPos = bPos + len;
+            }
+        }
+        return new EditScript(a, b, insertions, oldOffsets, newOffsets, lengths, size, exact);
+    }
+    
+    /**
+     * Compares a sequence of changed blocks of lines, each of which follows its equal run.
+     */
+    @SuppressWarnings("serial")
+    private static class Chunk extends RecursiveAction {
+        
+        /**
+         * The equal runs and changed blocks of lines.
+         */
+        private LineDiff lines;
+        
+        /**
+         * The index of the first block to be compared.
+         */
+        private int from;
+        
+        /**
+         * The index next to the last block to be compared.
+         */
+        private int to;
+        
+        /**
+         * The object that compares the blocks and holds their segments.
+         */
+        private Bisector bisector;
+        
+        /**
+         * Creates a task that compares blocks.
+         * @param lines the equal runs and changed blocks of lines
+         * @param from the index of the first block to be compared
+         * @param to the index next to the last block to be compared
+         * @param bisector the object that compares the blocks and holds their segments
+         */
+        Chunk(LineDiff lines, int from, int to, Bisector bisector) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.bisector = bisector;
+        }
+        
+        /**
+         * Compares the blocks.
+         */
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                bisector.segments.add(Segments.EQUAL, lines.getEqualLength(i));
+                bisector.compute(lines.getOldStart(i), lines.getOldEnd(i), lines.getNewStart(i), lines.getNewEnd(i));
+            }
+        }
+    }
+    
+    /**
+     * Finds the shortest edits between ranges of two texts by recursively dividing them at their middle snakes.
+     */
+    static class Bisector {
+        
+        /**
+         * The old text.
+         */
+        private char[] a;
+        
+        /**
+         * The new text.
+         */
+        private char[] b;
+        
+        /**
+         * The segments that receive the found alignment.
+         */
+        private Segments segments;
+        
+        /**
+         * The time in nanoseconds after which the remaining ranges are reported as replacements.
+         */
+        private long deadline;
+        
+        /**
+         * The furthest reaching paths in the forward direction, which are reused across the divisions.
+         */
+        private int[] v1 = new int[0];
+        
+        /**
+         * The furthest reaching paths in the reverse direction, which are reused across the divisions.
+         */
+        private int[] v2 = new int[0];
+        
+        /**
+         * A flag indicating if no range has been given up because the deadline passed.
+         */
+        private boolean exact = true;
+        
+        /**
+         * Creates an object that finds the shortest edits.
+         * @param a the old text
+         * @param b the new text
+         * @param segments the segments that receive the found alignment
+         * @param deadline the time in nanoseconds after which the search gives up
+         */
+        Bisector(char[] a, char[] b, Segments segments, long deadline) {
+            this.a = a;
+            this.b = b;
+            this.segments = segments;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Finds the edits between ranges of the texts and appends them to the segments.
+         * @param aStart the start of the range of the old text
+         * @param aEnd the end of the range of the old text
+         * @param bStart the start of the range of the new text
+         * @param bEnd the end of the range of the new text
+         */
+        void compute(int aStart, int aEnd, int bStart, int bEnd) {
+            int prefix = 0;
+            while (aStart + prefix < aEnd && bStart + prefix < bEnd && a[aStart + prefix] == b[bStart + prefix]) {
+                prefix++;
+            }
+            segments.add(Segments.EQUAL, prefix);
+            aStart = aStart + prefix;
+            bStart = bStart + prefix;
+            
+            int suffix = 0;
+            while (aEnd - suffix > aStart && bEnd - suffix > bStart && a[aEnd - suffix - 1] == b[bEnd - suffix - 1]) {
+                suffix++;
+            }
+            aEnd = aEnd - suffix;
+            bEnd = bEnd - suffix;
+            
+            computeMiddle(aStart, aEnd, bStart, bEnd);
+            segments.add(Segments.EQUAL, suffix);
+        }
+        
+        /**
+         * Finds the edits between ranges of the texts that have neither a common prefix nor a common suffix.
+         * @param aStart the start of the range of the old text
+         * @param aEnd the end of the range of the old text
+         * @param bStart the start of the range of the new text
+         * @param bEnd the end of the range of the new text
+         */
+        private void computeMiddle(int aStart, int aEnd, int bStart, int bEnd) {
+            int n = aEnd - aStart;
+            int m = bEnd - bStart;
+            if (n == 0) {
+                segments.add(Segments.INSERT, m);
+                return;
+            }
+            if (m == 0) {
+                segments.add(Segments.DELETE, n);
+                return;
+            }
+            
+            if (n > m) {
+                int index = indexOf(a, aStart, aEnd, b, bStart, bEnd);
+                if (index >= 0) {
+                    segments.add(Segments.DELETE, index - aStart);
+                    segments.add(Segments.EQUAL, m);
+                    segments.add(Segments.DELETE, aEnd - index - m);
+                    return;
+                }
+            } else {
+                int index = indexOf(b, bStart, bEnd, a, aStart, aEnd);
+                if (index >= 0) {
+                    segments.add(Segments.INSERT, index - bStart);
+                    segments.add(Segments.EQUAL, n);
+                    segments.add(Segments.INSERT, bEnd - index - n);
+                    return;
+                }
+            }
+            
+            if (n == 1 || m == 1) {
+                segments.add(Segments.DELETE, n);
+                segments.add(Segments.INSERT, m);
+                return;
+            }
+            
+            long split = bisect(aStart, aEnd, bStart, bEnd);
+            if (split < 0) {
+                segments.add(Segments.DELETE, n);
+                segments.add(Segments.INSERT, m);
+                return;
+            }
+            
+            int x = (int)(split >>> 32);
+            int y = (int)split;
+            compute(aStart, x, bStart, y);
+            compute(x, aEnd, y, bEnd);
+        }
+        
+        /**
+         * Finds the middle snake of the shortest edits between ranges of the texts.
+         * @param aStart the start of the range of the old text
+         * @param aEnd the end of the range of the old text
+         * @param bStart the start of the range of the new text
+         * @param bEnd the end of the range of the new text
+         * @return the point where the ranges are divided, whose upper and lower halves are the offsets in the old and new texts,
+         *         or <code>-1</code> if the deadline has passed or the ranges have no common character
+         */
+        private long bisect(int aStart, int aEnd, int bStart, int bEnd) {
+            int n = aEnd - aStart;
+            int m = bEnd - bStart;
+            int maxD = (n + m + 1) / 2;
+            int vOffset = maxD;
+            int vLength = 2 * maxD;
+            if (v1.length < vLength + 2) {
+                v1 = new int[vLength + 2];
+                v2 = new int[vLength + 2];
+            }
+            Arrays.fill(v1, 0, vLength + 2, -1);
+            Arrays.fill(v2, 0, vLength + 2, -1);
+            v1[vOffset + 1] = 0;
+            v2[vOffset + 1] = 0;
+            
+            int delta = n - m;
+            boolean front = (delta % 2 != 0);
+            int k1start = 0;
+            int k1end = 0;
+            int k2start = 0;
+            int k2end = 0;
+            for (int d = 0; d < maxD; d++) {
+                if (System.nanoTime() > deadline) {
+                    exact = false;
+                    break;
+                }
+                
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                    int k1Offset = vOffset + k1;
+                    int x1;
+                    if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                        x1 = v1[k1Offset + 1];
+                    } else {
+                        x1 = v1[k1Offset - 1] + 1;
+                    }
+                    int y1 = x1 - k1;
+                    while (x1 < n && y1 < m && a[aStart + x1] == b[bStart + y1]) {
+                        x1++;
+                        y1++;
+                    }
+                    v1[k1Offset] = x1;
+                    
+                    if (x1 > n) {
+                        k1end += 2;
+                    } else if (y1 > m) {
+                        k1start += 2;
+                    } else if (front) {
+                        int k2Offset = vOffset + delta - k1;
+                        if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1) {
+                            int x2 = n - v2[k2Offset];
+                            if (x1 >= x2) {
+                                return ((long)(aStart + x1) << 32) | (bStart + y1);
+                            }
+                        }
+                    }
+                }
+                
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                    int k2Offset = vOffset + k2;
+                    int x2;
+                    if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                        x2 = v2[k2Offset + 1];
+                    } else {
+                        x2 = v2[k2Offset - 1] + 1;
+                    }
+                    int y2 = x2 - k2;
+                    while (x2 < n && y2 < m && a[aEnd - x2 - 1] == b[bEnd - y2 - 1]) {
+                        x2++;
+                        y2++;
+                    }
+                    v2[k2Offset] = x2;
+                    
+                    if (x2 > n) {
+                        k2end += 2;
+                    } else if (y2 > m) {
+                        k2start += 2;
+                    } else if (!front) {
+                        int k1Offset = vOffset + delta - k2;
+                        if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                            int x1 = v1[k1Offset];
+                            int y1 = vOffset + x1 - k1Offset;
+                            if (x1 >= n - x2) {
+                                return ((long)(aStart + x1) << 32) | (bStart + y1);
+                            }
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Finds the first occurrence of a range of a text in a range of another text.
+         * @param text the text to be searched
+         * @param start the start of the range to be searched
+         * @param end the end of the range to be searched
+         * @param pattern the text to be found
+         * @param pStart the start of the range to be found
+         * @param pEnd the end of the range to be found
+         * @return the offset of the occurrence in the text, or <code>-1</code> if none
+         */
+        private static int indexOf(char[] text, int start, int end, char[] pattern, int pStart, int pEnd) {
+            int len = pEnd - pStart;
+            char first = pattern[pStart];
+            for (int i = start; i <= end - len; i++) {
+                if (text[i] != first) {
+                    continue;
+                }
+                int j = 1;
+                while (j < len && text[i + j] == pattern[pStart + j]) {
+                    j++;
+                }
+                if (j == len) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
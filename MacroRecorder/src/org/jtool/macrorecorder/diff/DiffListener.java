@@ -0,0 +1,23 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.diff;
+
+/**
+ * Defines the listener interface for receiving the results of the computations of a diff engine.
+ * @author Katsuhisa Maruyama
+ */
+public interface DiffListener {
+    
+    /**
+     * Receives the result of a computation of differences.
+     * This method is called on the thread that computed the differences, so it should return quickly.
+     * @param inputLength the total number of the characters of the old and new texts
+     * @param exact <code>true</code> if the computation finished before its deadline, otherwise <code>false</code>
+     * @param elapsedTime the time spent on the computation in nanoseconds
+     */
+    public void diffComputed(int inputLength, boolean exact, long elapsedTime);
+}
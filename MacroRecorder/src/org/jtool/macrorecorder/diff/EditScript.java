@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.diff;
+
+/**
+ * Stores the edits that transform an old text into a new one.
+ * Each edit is either a deletion or an insertion, and is kept as offsets and a length in primitive arrays.
+ * The edits are sorted by their positions, so that applying them in order to the old text yields the new text.
+ * @author Katsuhisa Maruyama
+ */
+public class EditScript {
+    
+    /**
+     * The old text.
+     */
+    private char[] oldText;
+    
+    /**
+     * The new text.
+     */
+    private char[] newText;
+    
+    /**
+     * The flags indicating if the respective edits are insertions.
+     */
+    private boolean[] insertions;
+    
+    /**
+     * The offsets of the respective edits in the old text.
+     */
+    private int[] oldOffsets;
+    
+    /**
+     * The offsets of the respective edits in the new text.
+     */
+    private int[] newOffsets;
+    
+    /**
+     * The lengths of the respective edits.
+     */
+    private int[] lengths;
+    
+    /**
+     * The number of the edits.
+     */
+    private int size;
+    
+    /**
+     * A flag indicating if the edits were found by a search that finished before its deadline.
+     */
+    private boolean exact;
+    
+    /**
+     * Creates an edit script.
+     * @param oldText the old text
+     * @param newText the new text
+     * @param insertions the flags indicating if the respective edits are insertions
+     * @param oldOffsets the offsets of the respective edits in the old text
+     * @param newOffsets the offsets of the respective edits in the new text
+     * @param lengths the lengths of the respective edits
+     * @param size the number of the edits
+     * @param exact <code>true</code> if the search finished before its deadline
+     */
+    EditScript(char[] oldText, char[] newText, boolean[] insertions, int[] oldOffsets, int[] newOffsets, int[] lengths, int size,
+               boolean exact) {
+        this.oldText = oldText;
+        this.newText = newText;
+        this.insertions = insertions;
+        this.oldOffsets = oldOffsets;
+        this.newOffsets = newOffsets;
+        this.lengths = lengths;
+        this.size = size;
+        this.exact = exact;
+    }
+    
+    /**
+     * Tests if the edits are the best ones the search can find.
+     * When the deadline of the search passed, the ranges left unsearched are reported as whole replacements,
+     * so the edits still transform the old text into the new one but are coarser.
+     * @return <code>true</code> if the search finished before its deadline, otherwise <code>false</code>
+     */
+    public boolean isExact() {
+        return exact;
+    }
+    
+    /**
+     * Returns the number of the edits.
+     * @return the number of the edits
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Tests if an edit is an insertion.
+     * @param index the index of the edit
+     * @return <code>true</code> if the edit inserts text, or <code>false</code> if it deletes text
+     */
+    public boolean isInsertion(int index) {
+        return insertions[index];
+    }
+    
+    /**
+     * Returns the offset of an edit in the old text.
+     * @param index the index of the edit
+     * @return the offset of the deleted text, or the offset where the text is inserted
+     */
+    public int getOldOffset(int index) {
+        return oldOffsets[index];
+    }
+    
+    /**
+     * Returns the offset of an edit in the new text.
+     * This offset is also the offset in the text to which the preceding edits have been applied.
+     * @param index the index of the edit
+     * @return the offset of the inserted text, or the offset where the text was deleted
+     */
+    public int getNewOffset(int index) {
+        return newOffsets[index];
+    }
+    
+    /**
+     * Returns the length of an edit.
+     * @param index the index of the edit
+     * @return the length of the inserted or deleted text
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+    
+    /**
+     * Returns the text of an edit.
+     * @param index the index of the edit
+     * @return the inserted or deleted text
+     */
+    public String getText(int index) {
+        if (insertions[index]) {
+            return new String(newText, newOffsets[index], lengths[index]);
+        }
+        return new String(oldText, oldOffsets[index], lengths[index]);
+    }
+    
+    /**
+     * Returns the string for printing, which does not contain a new line character at its end.
+     * @return the string for printing
+     */
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                buf.append(" ");
+            }
+            buf.append(insertions[i] ? "+" : "-");
+            buf.append(oldOffsets[i] + "/" + newOffsets[i] + ":" + lengths[i]);
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.diff;
+
+import java.util.Arrays;
+
+/**
+ * Finds the differences between ranges of two texts line by line before refining them character by character.
+ * Lines that appear exactly once in both ranges are matched by the patience algorithm and become anchors,
+ * and the ranges between the anchors are divided recursively. The result is a plan of equal runs and changed blocks
+ * of lines; only the blocks are compared character by character, and they can be compared independently.
+ * A range without unique lines is aligned by the algorithm of Myers on its lines, and large runs of unmatched lines
+ * are paired line by line, so that even a rewrite of every line does not become one huge block.
+ * @author Katsuhisa Maruyama
+ */
+class LineDiff {
+    
+    /**
+     * The maximum number of line edits searched by the algorithm of Myers in a range without unique lines.
+     */
+    static final int MAX_LINE_EDITS = 512;
+    
+    /**
+     * The number of the characters of a run of unmatched lines above which its lines are paired one by one.
+     */
+    static final int PAIR_THRESHOLD = 4096;
+    
+    /**
+     * The ranges of the changed blocks, each of which is stored as the start and end in the old text
+     * followed by the start and end in the new text.
+     */
+    private int[] blocks = new int[64];
+    
+    /**
+     * The lengths of the equal runs before the respective blocks, followed by the length of the last run.
+     */
+    private int[] equals = new int[17];
+    
+    /**
+     * The number of the changed blocks.
+     */
+    private int blockCount = 0;
+    
+    /**
+     * The length of the equal run found after the last block.
+     */
+    private int pendingEqual = 0;
+    
+    /**
+     * The offsets of the lines of the old text, followed by the end of the range.
+     */
+    private int[] aStarts;
+    
+    /**
+     * The offsets of the lines of the new text, followed by the end of the range.
+     */
+    private int[] bStarts;
+    
+    /**
+     * The identifiers of the contents of the respective lines of the old text.
+     */
+    private int[] aIds;
+    
+    /**
+     * The identifiers of the contents of the respective lines of the new text.
+     */
+    private int[] bIds;
+    
+    /**
+     * The numbers of occurrences of the respective identifiers in the old range under comparison.
+     */
+    private int[] countA;
+    
+    /**
+     * The numbers of occurrences of the respective identifiers in the new range under comparison.
+     */
+    private int[] countB;
+    
+    /**
+     * The last line of the new range under comparison that has the respective identifiers.
+     */
+    private int[] posB;
+    
+    /**
+     * Creates an object that finds the differences between ranges of two texts.
+     * Each range must start at the beginning of a line.
+     * @param a the old text
+     * @param aStart the start of the range of the old text
+     * @param aEnd the end of the range of the old text
+     * @param b the new text
+     * @param bStart the start of the range of the new text
+     * @param bEnd the end of the range of the new text
+     */
+    LineDiff(char[] a, int aStart, int aEnd, char[] b, int bStart, int bEnd) {
+        aStarts = splitLines(a, aStart, aEnd);
+        bStarts = splitLines(b, bStart, bEnd);
+        
+        LineTable table = new LineTable(aStarts.length + bStarts.length);
+        aIds = table.identify(a, aStarts);
+        bIds = table.identify(b, bStarts);
+        
+        countA = new int[table.size()];
+        countB = new int[table.size()];
+        posB = new int[table.size()];
+    }
+    
+    /**
+     * Finds the equal runs and changed blocks of lines.
+     */
+    void compute() {
+        diff(0, aIds.length, 0, bIds.length);
+        equals[blockCount] = pendingEqual;
+    }
+    
+    /**
+     * Returns the number of the changed blocks.
+     * @return the number of the blocks
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+    
+    /**
+     * Returns the length of the equal run before a block.
+     * @param index the index of the block, or the number of the blocks for the run after the last block
+     * @return the number of the equal characters
+     */
+    int getEqualLength(int index) {
+        return equals[index];
+    }
+    
+    /**
+     * Returns the start of a block in the old text.
+     * @param index the index of the block
+     * @return the offset of the start
+     */
+    int getOldStart(int index) {
+        return blocks[index * 4];
+    }
+    
+    /**
+     * Returns the end of a block in the old text.
+     * @param index the index of the block
+     * @return the offset of the end
+     */
+    int getOldEnd(int index) {
+        return blocks[index * 4 + 1];
+    }
+    
+    /**
+     * Returns the start of a block in the new text.
+     * @param index the index of the block
+     * @return the offset of the start
+     */
+    int getNewStart(int index) {
+        return blocks[index * 4 + 2];
+    }
+    
+    /**
+     * Returns the end of a block in the new text.
+     * @param index the index of the block
+     * @return the offset of the end
+     */
+    int getNewEnd(int index) {
+        return blocks[index * 4 + 3];
+    }
+    
+    /**
+     * Returns the number of the characters of a block in both texts.
+     * @param index the index of the block
+     * @return the sum of the lengths of the block in the old and new texts
+     */
+    int getBlockLength(int index) {
+        return getOldEnd(index) - getOldStart(index) + getNewEnd(index) - getNewStart(index);
+    }
+    
+    /**
+     * Finds the differences between ranges of lines.
+     * @param a0 the first line of the old range
+     * @param a1 the line next to the last line of the old range
+     * @param b0 the first line of the new range
+     * @param b1 the line next to the last line of the new range
+     */
+    private void diff(int a0, int a1, int b0, int b1) {
+        int prefix = 0;
+        while (a0 + prefix < a1 && b0 + prefix < b1 && aIds[a0 + prefix] == bIds[b0 + prefix]) {
+            prefix++;
+        }
+        pendingEqual = pendingEqual + aStarts[a0 + prefix] - aStarts[a0];
+        a0 = a0 + prefix;
+        b0 = b0 + prefix;
+        
+        int suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0 && aIds[a1 - suffix - 1] == bIds[b1 - suffix - 1]) {
+            suffix++;
+        }
+        int suffixLength = aStarts[a1] - aStarts[a1 - suffix];
+        a1 = a1 - suffix;
+        b1 = b1 - suffix;
+        
+        int[] anchors = null;
+        if (a0 < a1 && b0 < b1) {
+            anchors = findAnchors(a0, a1, b0, b1);
+        }
+        
+        if (anchors == null) {
+            alignLines(a0, a1, b0, b1);
+        } else {
+            int aPrev = a0;
+            int bPrev = b0;
+            for (int i = 0; i < anchors.length; i = i + 2) {
+                diff(aPrev, anchors[i], bPrev, anchors[i + 1]);
+                pendingEqual = pendingEqual + aStarts[anchors[i] + 1] - aStarts[anchors[i]];
+                aPrev = anchors[i] + 1;
+                bPrev = anchors[i + 1] + 1;
+            }
+            diff(aPrev, a1, bPrev, b1);
+        }
+        
+        pendingEqual = pendingEqual + suffixLength;
+    }
+    
+    /**
+     * Aligns ranges of lines without unique lines by the shortest line edits, and divides the unmatched lines into blocks.
+     * @param a0 the first line of the old range
+     * @param a1 the line next to the last line of the old range
+     * @param b0 the first line of the new range
+     * @param b1 the line next to the last line of the new range
+     */
+    private void alignLines(int a0, int a1, int b0, int b1) {
+        int[] matches = null;
+        if (a0 < a1 && b0 < b1) {
+            matches = matchLines(a0, a1, b0, b1);
+        }
+        if (matches == null) {
+            addLines(a0, a1, b0, b1);
+            return;
+        }
+        
+        int aPrev = a0;
+        int bPrev = b0;
+        for (int i = 0; i < matches.length; i = i + 2) {
+            addLines(aPrev, matches[i], bPrev, matches[i + 1]);
+            pendingEqual = pendingEqual + aStarts[matches[i] + 1] - aStarts[matches[i]];
+            aPrev = matches[i] + 1;
+            bPrev = matches[i + 1] + 1;
+        }
+        addLines(aPrev, a1, bPrev, b1);
+    }
+    
+    /**
+     * Finds the shortest line edits between ranges of lines by the greedy algorithm of Myers.
+     * The search gives up when the ranges need more than <code>MAX_LINE_EDITS</code> line edits.
+     * @param a0 the first line of the old range
+     * @param a1 the line next to the last line of the old range
+     * @param b0 the first line of the new range
+     * @param b1 the line next to the last line of the new range
+     * @return the pairs of the matched lines of the old and new ranges, or <code>null</code> if none was found
+     */
+    private int[] matchLines(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0;
+        int m = b1 - b0;
+        int max = Math.min(n + m, MAX_LINE_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        int[][] trace = new int[max + 1][];
+        
+        int edits = -1;
+        for (int d = 0; d <= max && edits < 0; d++) {
+            trace[d] = Arrays.copyOfRange(v, offset - d, offset + d + 1);
+            for (int k = -d; k <= d; k = k + 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && aIds[a0 + x] == bIds[b0 + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    edits = d;
+                    break;
+                }
+            }
+        }
+        if (edits < 0 || edits == n + m) {
+            return null;
+        }
+        
+        int[] matches = new int[Math.min(n, m) * 2];
+        int count = 0;
+        int x = n;
+        int y = m;
+        for (int d = edits; d > 0; d--) {
+            int[] prev = trace[d];
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[k - 1 + d] < prev[k + 1 + d])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = prev[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+                matches[count++] = a0 + x;
+                matches[count++] = b0 + y;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            matches[count++] = a0 + x;
+            matches[count++] = b0 + y;
+        }
+        
+        int[] result = new int[count];
+        for (int i = 0; i < count; i = i + 2) {
+            result[i] = matches[count - i - 2];
+            result[i + 1] = matches[count - i - 1];
+        }
+        return result;
+    }
+    
+    /**
+     * Appends the blocks of a run of unmatched lines.
+     * A small run becomes one block. The lines of a large run are paired one by one, and the lines left over
+     * on the longer side are added to the last pair, so that each block stays small enough to compare exactly.
+     * @param a0 the first line of the old run
+     * @param a1 the line next to the last line of the old run
+     * @param b0 the first line of the new run
+     * @param b1 the line next to the last line of the new run
+     */
+    private void addLines(int a0, int a1, int b0, int b1) {
+        int pairs = Math.min(a1 - a0, b1 - b0);
+        int length = aStarts[a1] - aStarts[a0] + bStarts[b1] - bStarts[b0];
+        if (pairs < 2 || length < PAIR_THRESHOLD) {
+            addBlock(aStarts[a0], aStarts[a1], bStarts[b0], bStarts[b1]);
+            return;
+        }
+        
+        for (int i = 0; i < pairs - 1; i++) {
+            addBlock(aStarts[a0 + i], aStarts[a0 + i + 1], bStarts[b0 + i], bStarts[b0 + i + 1]);
+        }
+        addBlock(aStarts[a0 + pairs - 1], aStarts[a1], bStarts[b0 + pairs - 1], bStarts[b1]);
+    }
+    
+    /**
+     * Appends a changed block after the equal run found so far.
+     * @param aStart the start of the block in the old text
+     * @param aEnd the end of the block in the old text
+     * @param bStart the start of the block in the new text
+     * @param bEnd the end of the block in the new text
+     */
+    private void addBlock(int aStart, int aEnd, int bStart, int bEnd) {
+        if (aStart == aEnd && bStart == bEnd) {
+            return;
+        }
+        
+        if (blockCount * 4 + 4 > blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        if (blockCount + 2 > equals.length) {
+            equals = Arrays.copyOf(equals, equals.length * 2);
+        }
+        blocks[blockCount * 4] = aStart;
+        blocks[blockCount * 4 + 1] = aEnd;
+        blocks[blockCount * 4 + 2] = bStart;
+        blocks[blockCount * 4 + 3] = bEnd;
+        equals[blockCount] = pendingEqual;
+        blockCount++;
+        pendingEqual = 0;
+    }
+    
+    /**
+     * Finds the longest sequence of lines that appear exactly once in both ranges and keep their order.
+     * @param a0 the first line of the old range
+     * @param a1 the line next to the last line of the old range
+     * @param b0 the first line of the new range
+     * @param b1 the line next to the last line of the new range
+     * @return the pairs of the matched lines of the old and new ranges, or <code>null</code> if none
+     */
+    private int[] findAnchors(int a0, int a1, int b0, int b1) {
+        for (int i = a0; i < a1; i++) {
+            countA[aIds[i]]++;
+        }
+        for (int j = b0; j < b1; j++) {
+            countB[bIds[j]]++;
+            posB[bIds[j]] = j;
+        }
+        
+        int[] candA = new int[Math.min(a1 - a0, b1 - b0)];
+        int[] candB = new int[candA.length];
+        int n = 0;
+        for (int i = a0; i < a1; i++) {
+            int id = aIds[i];
+            if (countA[id] == 1 && countB[id] == 1) {
+                candA[n] = i;
+                candB[n] = posB[id];
+                n++;
+            }
+        }
+        
+        for (int i = a0; i < a1; i++) {
+            countA[aIds[i]] = 0;
+        }
+        for (int j = b0; j < b1; j++) {
+            countB[bIds[j]] = 0;
+        }
+        
+        if (n == 0) {
+            return null;
+        }
+        
+        int[] tails = new int[n];
+        int[] prev = new int[n];
+        int len = 0;
+        for (int k = 0; k < n; k++) {
+            int lo = 0;
+            int hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (candB[tails[mid]] < candB[k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[k] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = k;
+            if (lo == len) {
+                len++;
+            }
+        }
+        
+        int[] anchors = new int[len * 2];
+        for (int k = tails[len - 1], i = len - 1; k >= 0; k = prev[k], i--) {
+            anchors[i * 2] = candA[k];
+            anchors[i * 2 + 1] = candB[k];
+        }
+        return anchors;
+    }
+    
+    /**
+     * Divides a range of a text into lines, each of which includes its line terminator.
+     * @param text the text
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the offsets of the lines, followed by the end of the range
+     */
+    private static int[] splitLines(char[] text, int start, int end) {
+        int[] starts = new int[16];
+        int n = 0;
+        int pos = start;
+        while (pos < end) {
+            if (n + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[n++] = pos;
+            while (pos < end && text[pos] != '\n') {
+                pos++;
+            }
+            if (pos < end) {
+                pos++;
+            }
+        }
+        starts[n] = end;
+        return Arrays.copyOf(starts, n + 1);
+    }
+    
+    /**
+     * Assigns the same identifier to lines that have the same contents.
+     */
+    private static class LineTable {
+        
+        /**
+         * The hash table that stores the identifiers plus one, or <code>0</code> for empty slots.
+         */
+        private int[] slots;
+        
+        /**
+         * The texts that contain the first lines of the respective identifiers.
+         */
+        private char[][] texts;
+        
+        /**
+         * The offsets of the first lines of the respective identifiers.
+         */
+        private int[] starts;
+        
+        /**
+         * The lengths of the lines of the respective identifiers.
+         */
+        private int[] lengths;
+        
+        /**
+         * The hash codes of the lines of the respective identifiers.
+         */
+        private int[] hashes;
+        
+        /**
+         * The number of the identifiers.
+         */
+        private int size = 0;
+        
+        /**
+         * Creates an empty table.
+         * @param capacity the maximum number of the lines to be identified
+         */
+        LineTable(int capacity) {
+            int n = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+            slots = new int[n];
+            texts = new char[capacity][];
+            starts = new int[capacity];
+            lengths = new int[capacity];
+            hashes = new int[capacity];
+        }
+        
+        /**
+         * Returns the number of the identifiers.
+         * @return the number of the identifiers
+         */
+        int size() {
+            return size;
+        }
+        
+        /**
+         * Identifies the lines of a text.
+         * @param text the text
+         * @param lineStarts the offsets of the lines, followed by the end of the range
+         * @return the identifiers of the respective lines
+         */
+        int[] identify(char[] text, int[] lineStarts) {
+            int[] ids = new int[lineStarts.length - 1];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = identify(text, lineStarts[i], lineStarts[i + 1] - lineStarts[i]);
+            }
+            return ids;
+        }
+        
+        /**
+         * Identifies a line.
+         * @param text the text that contains the line
+         * @param start the offset of the line
+         * @param len the length of the line
+         * @return the identifier of the line
+         */
+        private int identify(char[] text, int start, int len) {
+            int hash = 0;
+            for (int i = start; i < start + len; i++) {
+                hash = 31 * hash + text[i];
+            }
+            
+            int mask = slots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (hashes[id] == hash && lengths[id] == len && equals(texts[id], starts[id], text, start, len)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            
+            int id = size++;
+            texts[id] = text;
+            starts[id] = start;
+            lengths[id] = len;
+            hashes[id] = hash;
+            slots[slot] = id + 1;
+            return id;
+        }
+        
+        /**
+         * Tests if two ranges of texts contain the same characters.
+         * @param t1 the first text
+         * @param s1 the start of the range of the first text
+         * @param t2 the second text
+         * @param s2 the start of the range of the second text
+         * @param len the length of the ranges
+         * @return <code>true</code> if the ranges are the same, otherwise <code>false</code>
+         */
+        private static boolean equals(char[] t1, int s1, char[] t2, int s2, int len) {
+            for (int i = 0; i < len; i++) {
+                if (t1[s1 + i] != t2[s2 + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.diff;
+
+import java.util.Arrays;
+
+/**
+ * Stores the alignment of two texts as a sequence of equal, deleted and inserted segments.
+ * Each segment is kept as its kind and length; its text is located by the lengths of the preceding segments.
+ * The cleanup methods follow those of diff-match-patch, but work on the lengths without building substrings.
+ * @author Katsuhisa Maruyama
+ */
+class Segments {
+    
+    /**
+     * The kind of a segment that appears in both texts.
+     */
+    static final byte EQUAL = 0;
+    
+    /**
+     * The kind of a segment that appears only in the old text.
+     */
+    static final byte DELETE = 1;
+    
+    /**
+     * The kind of a segment that appears only in the new text.
+     */
+    static final byte INSERT = 2;
+    
+    /**
+     * The kind of a segment of the same length deleted from the old text and inserted into the new text.
+     * An equal segment becomes this kind when it is not worth keeping, and is split when the segments are merged.
+     */
+    static final byte REPLACE = 3;
+    
+    /**
+     * The old text.
+     */
+    private char[] a;
+    
+    /**
+     * The new text.
+     */
+    private char[] b;
+    
+    /**
+     * The kinds of the respective segments.
+     */
+    private byte[] ops = new byte[16];
+    
+    /**
+     * The lengths of the respective segments.
+     */
+    private int[] lens = new int[16];
+    
+    /**
+     * The number of the segments.
+     */
+    private int size = 0;
+    
+    /**
+     * Creates an empty sequence of segments.
+     * @param a the old text
+     * @param b the new text
+     */
+    Segments(char[] a, char[] b) {
+        this.a = a;
+        this.b = b;
+    }
+    
+    /**
+     * Appends a segment, which is merged with the last segment of the same kind.
+     * @param op the kind of the segment
+     * @param len the length of the segment
+     */
+    void add(byte op, int len) {
+        if (len <= 0) {
+            return;
+        }
+        
+        if (size > 0 && ops[size - 1] == op) {
+            lens[size - 1] = lens[size - 1] + len;
+            return;
+        }
+        
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            lens = Arrays.copyOf(lens, size * 2);
+        }
+        ops[size] = op;
+        lens[size] = len;
+        size++;
+    }
+    
+    /**
+     * Appends all the segments of another sequence.
+     * @param other the sequence of the segments to be appended
+     */
+    void addAll(Segments other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.ops[i], other.lens[i]);
+        }
+    }
+    
+    /**
+     * Returns the number of the segments.
+     * @return the number of the segments
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the kind of a segment.
+     * @param index the index of the segment
+     * @return the kind of the segment
+     */
+    byte getOp(int index) {
+        return ops[index];
+    }
+    
+    /**
+     * Returns the length of a segment.
+     * @param index the index of the segment
+     * @return the length of the segment
+     */
+    int getLength(int index) {
+        return lens[index];
+    }
+    
+    /**
+     * Reorders and merges like segments, and shifts single edits to eliminate equalities.
+     * This corresponds to <code>diff_cleanupMerge</code>.
+     */
+    void cleanupMerge() {
+        boolean changes = true;
+        while (changes) {
+            mergeRuns();
+            changes = shiftEdits();
+        }
+    }
+    
+    /**
+     * Merges the deleted and inserted segments between equalities into at most one deletion followed by one insertion,
+     * and factors out their common prefix and suffix into the surrounding equalities.
+     */
+    private void mergeRuns() {
+        byte[] srcOps = ops;
+        int[] srcLens = lens;
+        int srcSize = size;
+        ops = new byte[Math.max(16, srcSize + 1)];
+        lens = new int[ops.length];
+        size = 0;
+        
+        int aPos = 0;
+        int bPos = 0;
+        int runA = 0;
+        int runB = 0;
+        int countDelete = 0;
+        int countInsert = 0;
+        int lenDelete = 0;
+        int lenInsert = 0;
+        
+        for (int i = 0; i <= srcSize; i++) {
+            byte op = i < srcSize ? srcOps[i] : EQUAL;
+            int len = i < srcSize ? srcLens[i] : 0;
+            
+            if (op != EQUAL) {
+                if (countDelete + countInsert == 0) {
+                    runA = aPos;
+                    runB = bPos;
+                }
+                if (op == DELETE || op == REPLACE) {
+                    countDelete++;
+                    lenDelete = lenDelete + len;
+                    aPos = aPos + len;
+                }
+                if (op == INSERT || op == REPLACE) {
+                    countInsert++;
+                    lenInsert = lenInsert + len;
+                    bPos = bPos + len;
+                }
+                continue;
+            }
+            
+            aPos = aPos + len;
+            bPos = bPos + len;
+            if (countDelete != 0 && countInsert != 0) {
+                int common = commonPrefix(runA, runA + lenDelete, runB, runB + lenInsert);
+                if (common != 0) {
+                    add(EQUAL, common);
+                    runA = runA + common;
+                    runB = runB + common;
+                    lenDelete = lenDelete - common;
+                    lenInsert = lenInsert - common;
+                }
+                common = commonSuffix(runA, runA + lenDelete, runB, runB + lenInsert);
+                if (common != 0) {
+                    lenDelete = lenDelete - common;
+                    lenInsert = lenInsert - common;
+                    len = len + common;
+                }
+            }
+            add(DELETE, lenDelete);
+            add(INSERT, lenInsert);
+            add(EQUAL, len);
+            
+            countDelete = 0;
+            countInsert = 0;
+            lenDelete = 0;
+            lenInsert = 0;
+        }
+    }
+    
+    /**
+     * Shifts single edits surrounded by equalities sideways to eliminate an equality.
+     * For example, <code>A&lt;ins&gt;BA&lt;/ins&gt;C</code> becomes <code>&lt;ins&gt;AB&lt;/ins&gt;AC</code>.
+     * @return <code>true</code> if any edit was shifted, otherwise <code>false</code>
+     */
+    private boolean shiftEdits() {
+        if (size < 3) {
+            return false;
+        }
+        
+        int[] aStarts = new int[size];
+        int[] bStarts = new int[size];
+        int aPos = 0;
+        int bPos = 0;
+        for (int i = 0; i < size; i++) {
+            aStarts[i] = aPos;
+            bStarts[i] = bPos;
+            if (ops[i] != INSERT) {
+                aPos = aPos + lens[i];
+            }
+            if (ops[i] != DELETE) {
+                bPos = bPos + lens[i];
+            }
+        }
+        
+        boolean changes = false;
+        int prev = 0;
+        int cur = 1;
+        int next = 2;
+        while (next < size) {
+            if (ops[prev] == EQUAL && ops[next] == EQUAL) {
+                char[] text = ops[cur] == INSERT ? b : a;
+                int start = ops[cur] == INSERT ? bStarts[cur] : aStarts[cur];
+                int len = lens[cur];
+                
+                if (len >= lens[prev] && regionEquals(text, start + len - lens[prev], aStarts[prev], lens[prev])) {
+                    aStarts[cur] = aStarts[prev];
+                    bStarts[cur] = bStarts[prev];
+                    aStarts[next] = aStarts[next] - lens[prev];
+                    bStarts[next] = bStarts[next] - lens[prev];
+                    lens[next] = lens[next] + lens[prev];
+                    lens[prev] = 0;
+                    changes = true;
+                    
+                    prev = next;
+                    cur = next + 1;
+                    next = next + 2;
+                    continue;
+                    
+                } else if (len >= lens[next] && regionEquals(text, start, aStarts[next], lens[next])) {
+                    lens[prev] = lens[prev] + lens[next];
+                    aStarts[cur] = aStarts[cur] + lens[next];
+                    bStarts[cur] = bStarts[cur] + lens[next];
+                    lens[next] = 0;
+                    changes = true;
+                    
+                    prev = cur;
+                    cur = next + 1;
+                    next = next + 2;
+                    continue;
+                }
+            }
+            prev = cur;
+            cur = next;
+            next = next + 1;
+        }
+        
+        if (changes) {
+            removeEmpty();
+        }
+        return changes;
+    }
+    
+    /**
+     * Removes the segments whose lengths are zero.
+     */
+    private void removeEmpty() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (lens[i] > 0) {
+                ops[n] = ops[i];
+                lens[n] = lens[i];
+                n++;
+            }
+        }
+        size = n;
+    }
+    
+    /**
+     * Reduces the number of edits by eliminating short equalities surrounded by edits,
+     * when the cost of an edit is larger than keeping the equality.
+     * This corresponds to <code>diff_cleanupEfficiency</code>.
+     * @param editCost the cost of an empty edit operation in terms of edit characters
+     */
+    void cleanupEfficiency(int editCost) {
+        if (size == 0) {
+            return;
+        }
+        
+        boolean changes = false;
+        int[] equalities = new int[16];
+        int top = 0;
+        int lastEquality = -1;
+        boolean preIns = false;
+        boolean preDel = false;
+        boolean postIns = false;
+        boolean postDel = false;
+        int safe = 0;
+        boolean safeInsertion = false;
+        
+        int i = 0;
+        while (i < size) {
+            if (ops[i] == EQUAL) {
+                if (lens[i] < editCost && (postIns || postDel)) {
+                    if (top == equalities.length) {
+                        equalities = Arrays.copyOf(equalities, top * 2);
+                    }
+                    equalities[top++] = i;
+                    preIns = postIns;
+                    preDel = postDel;
+                    lastEquality = lens[i];
+                } else {
+                    top = 0;
+                    lastEquality = -1;
+                    safe = i;
+                    safeInsertion = false;
+                }
+                postIns = false;
+                postDel = false;
+                
+            } else {
+                if (ops[i] != INSERT) {
+                    postDel = true;
+                }
+                if (ops[i] != DELETE) {
+                    postIns = true;
+                }
+                
+                int count = (preIns ? 1 : 0) + (preDel ? 1 : 0) + (postIns ? 1 : 0) + (postDel ? 1 : 0);
+                if (lastEquality >= 0 &&
+                    ((preIns && preDel && postIns && postDel) || (lastEquality < editCost / 2 && count == 3))) {
+                    int eq = equalities[--top];
+                    ops[eq] = REPLACE;
+                    lastEquality = -1;
+                    changes = true;
+                    
+                    if (preIns && preDel) {
+                        postIns = true;
+                        postDel = true;
+                        top = 0;
+                        safe = eq;
+                        safeInsertion = true;
+                        i = eq;
+                    } else {
+                        if (top > 0) {
+                            top--;
+                        }
+                        postIns = false;
+                        postDel = false;
+                        if (top > 0) {
+                            i = equalities[top - 1];
+                        } else if (safeInsertion) {
+                            i = safe + 1;
+                            postIns = true;
+                        } else {
+                            i = safe;
+                        }
+                        continue;
+                    }
+                }
+            }
+            i++;
+        }
+        
+        if (changes) {
+            cleanupMerge();
+        }
+    }
+    
+    /**
+     * Tests if a range of a text equals a range of the old text.
+     * @param text the text
+     * @param start the start of the range of the text
+     * @param aStart the start of the range of the old text
+     * @param len the length of the ranges
+     * @return <code>true</code> if the ranges contain the same characters, otherwise <code>false</code>
+     */
+    private boolean regionEquals(char[] text, int start, int aStart, int len) {
+        for (int i = 0; i < len; i++) {
+            if (text[start + i] != a[aStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the length of the common prefix of two ranges of the old and new texts.
+     * @param aStart the start of the range of the old text
+     * @param aEnd the end of the range of the old text
+     * @param bStart the start of the range of the new text
+     * @param bEnd the end of the range of the new text
+     * @return the number of the common characters
+     */
+    private int commonPrefix(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = Math.min(aEnd - aStart, bEnd - bStart);
+        int i = 0;
+        while (i < n && a[aStart + i] == b[bStart + i]) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Returns the length of the common suffix of two ranges of the old and new texts.
+     * @param aStart the start of the range of the old text
+     * @param aEnd the end of the range of the old text
+     * @param bStart the start of the range of the new text
+     * @param bEnd the end of the range of the new text
+     * @return the number of the common characters
+     */
+    private int commonSuffix(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = Math.min(aEnd - aStart, bEnd - bStart);
+        int i = 0;
+        while (i < n && a[aEnd - i - 1] == b[bEnd - i - 1]) {
+            i++;
+        }
+        return i;
+    }
+}
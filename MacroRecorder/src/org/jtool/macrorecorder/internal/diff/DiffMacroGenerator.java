@@ -6,13 +6,11 @@
 
 package org.jtool.macrorecorder.internal.diff;
 
-import org.jtool.macrorecorder.internal.diff.diff_match_patch.Diff;
-import org.jtool.macrorecorder.internal.diff.diff_match_patch.Operation;
 import org.jtool.macrorecorder.macro.DiffMacro;
+import org.jtool.macrorecorder.diff.DiffEngine;
+import org.jtool.macrorecorder.diff.EditScript;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
 /**
  * Generates diff macros from differences between the contents of two the source files.
@@ -21,16 +19,24 @@ import java.util.ListIterator;
 public class DiffMacroGenerator {
     
     /**
-     * The cost of an empty edit operation in terms of edit characters.
+     * The engine that finds differences.
      */
-    private static short editCost = 4;
+    private static DiffEngine engine = new DiffEngine();
     
     /**
      * Sets the edit costs for finding difference.
      * @param cost the edit cost to be set
      */
     public static void setEditCost(short cost) {
-        editCost = cost;
+        engine.setEditCost(cost);
+    }
+    
+    /**
+     * Returns the engine that finds differences, which can compute them with a deadline and edit cost of each call.
+     * @return the engine
+     */
+    public static DiffEngine getEngine() {
+        return engine;
     }
     
     /**
@@ -42,71 +48,48 @@ public class DiffMacroGenerator {
      * @return the collection of the generated diff macros
      */
     public static List<DiffMacro> generate(long time, String path, String otext, String ntext) {
-        List<DiffMacro> macros = new ArrayList<DiffMacro>();
-        List<CodeDelta> deltas = findDiff(otext, ntext);
-        
-        int offsetGap = 0;
-        for (int idx = 0; idx < deltas.size(); idx++) {
-            CodeDelta delta = deltas.get(idx);
-            
-            String itext = "";
-            String dtext = "";
-            if (delta.getType() == CodeDelta.Type.DELETE) {
-                dtext = delta.getText();
-                
-            } else if (delta.getType() == CodeDelta.Type.INSERT) {
-                itext = delta.getText();
-            }
-            
-            int start = delta.getOffset() + offsetGap;
-            DiffMacro macro = new DiffMacro(time, "Diff", path, start, itext, dtext);
-            offsetGap = offsetGap - dtext.length();
-            
-            macros.add(macro);
-        }
-        
-        return macros;
+        return generate(time, path, 0, otext, ntext);
     }
     
     /**
-     * Finds differences between the contents of two the source code files.
-     * @param otext the contents of the source code file to be diffed
-     * @param ntext the contents of the source code file to be diffed
-     * @return the collection of the code deltas
+     * Generates diff macros from the differences between two ranges of textual contents that start at the same offset.
+     * @param time the time when this operation was inserted
+     * @param path the name of the file path on which this operation was performed
+     * @param offset the offset of the ranges in the file
+     * @param otext the old contents of the range
+     * @param ntext the new contents of the range
+     * @return the collection of the generated diff macros
      */
-    private static List<CodeDelta> findDiff(String otext, String ntext) {
-        diff_match_patch dmp = new diff_match_patch();
-        dmp.Diff_EditCost = editCost;
-        
-        LinkedList<Diff> diffs = dmp.diff_main(otext, ntext);
-        dmp.diff_cleanupEfficiency(diffs);
-        List<CodeDelta> deltas = getDeltas(diffs);
-        
-        return deltas;
+    public static List<DiffMacro> generate(long time, String path, int offset, String otext, String ntext) {
+        return generate(time, path, offset, engine.diff(otext, ntext));
     }
     
     /**
-     * Obtains the deltas from a given difference information.
-     * @param diffs the collection of difference information of the diff utility.
-     * @return the collection of the code deltas
+     * Generates diff macros from the differences that have been found between two ranges starting at the same offset.
+     * @param time the time when this operation was inserted
+     * @param path the name of the file path on which this operation was performed
+     * @param offset the offset of the ranges in the file
+     * @param script the edits between the old and new contents of the ranges
+     * @return the collection of the generated diff macros
      */
-    private static List<CodeDelta> getDeltas(LinkedList<Diff> diffs) {
-        ArrayList<CodeDelta> deltas = new ArrayList<CodeDelta>();
-        int offset = 0;
+    public static List<DiffMacro> generate(long time, String path, int offset, EditScript script) {
+        List<DiffMacro> macros = new ArrayList<DiffMacro>();
         
-        for (ListIterator<Diff> pointer = diffs.listIterator(); pointer.hasNext(); ) { 
-            Diff diff = pointer.next();
-            
-            if (diff.operation == Operation.INSERT) {
-                deltas.add(new CodeDelta(offset, CodeDelta.Type.INSERT, diff.text));
-                
-            } else if (diff.operation == Operation.DELETE) {
-                deltas.add(new CodeDelta(offset, CodeDelta.Type.DELETE, diff.text));
+        for (int idx = 0; idx < script.size(); idx++) {
+            String itext = "";
+            String dtext = "";
+            if (script.isInsertion(idx)) {
+                itext = script.getText(idx);
+            } else {
+                dtext = script.getText(idx);
             }
             
-            offset = offset + diff.text.length();
+            int start = offset + script.getNewOffset(idx);
+            DiffMacro macro = new DiffMacro(time, "Diff", path, start, itext, dtext);
+            
+            macros.add(macro);
         }
         
-        return deltas;
+        return macros;
     }
 }
@@ -6,6 +6,8 @@
 
 package org.jtool.macrorecorder.internal.recorder;
 
+import org.jtool.macrorecorder.core.BulkCommands;
+import org.jtool.macrorecorder.core.DocumentRecorder;
 import org.jtool.macrorecorder.macro.ExecutionMacro;
 import org.jtool.macrorecorder.macro.TriggerMacro;
 import org.eclipse.core.commands.ExecutionEvent;
@@ -16,6 +18,9 @@ import org.eclipse.core.commands.common.NotDefinedException;
 import org.eclipse.ui.commands.ICommandService;
 import org.eclipse.ui.PlatformUI;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Manages command events (menu etc.).
  * @author Katsuhisa Maruyama
@@ -27,6 +32,11 @@ public class CommandExecutionManager implements IExecutionListener {
      */
     private MenuMacroRecorder recorder;
     
+    /**
+     * The recorders under bulk changes, indexed by the identifiers of the commands performing them.
+     */
+    private Map<String, DocumentRecorder> bulkRecorders = new HashMap<String, DocumentRecorder>();
+    
     /**
      * Creates an object that records command execution events.
      * @param recorder a recorder that records menu actions
@@ -70,6 +80,15 @@ public class CommandExecutionManager implements IExecutionListener {
         ExecutionMacro macro = new ExecutionMacro(time, "Exec", path, commandId);
         recorder.recordExecutionMacro(macro);
         
+        String type = BulkCommands.getType(commandId);
+        if (type != null) {
+            DocumentRecorder docRecorder = recorder.getDocMacroRecorder(path);
+            if (docRecorder != null && !bulkRecorders.containsKey(commandId)) {
+                docRecorder.beginBulkChange(type);
+                bulkRecorders.put(commandId, docRecorder);
+            }
+        }
+        
         try {
             String id = event.getCommand().getCategory().getId();
             if (id.endsWith("category.refactoring")) {
@@ -90,6 +109,7 @@ public class CommandExecutionManager implements IExecutionListener {
      */
     @Override
     public void postExecuteSuccess(String commandId, Object returnValue) {
+        endBulkChange(commandId);
     }
     
     /**
@@ -99,6 +119,7 @@ public class CommandExecutionManager implements IExecutionListener {
      */
     @Override
     public void notHandled(String commandId, NotHandledException exception) {
+        endBulkChange(commandId);
     }
     
     /**
@@ -108,5 +129,17 @@ public class CommandExecutionManager implements IExecutionListener {
      */
     @Override
     public void postExecuteFailure(String commandId, ExecutionException exception) {
+        endBulkChange(commandId);
+    }
+    
+    /**
+     * Ends the bulk change performed by a command.
+     * @param commandId the identifier of the command
+     */
+    private void endBulkChange(String commandId) {
+        DocumentRecorder docRecorder = bulkRecorders.remove(commandId);
+        if (docRecorder != null) {
+            docRecorder.endBulkChange();
+        }
     }
 }
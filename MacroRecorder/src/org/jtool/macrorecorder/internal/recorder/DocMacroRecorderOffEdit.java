@@ -12,6 +12,10 @@ import org.jtool.macrorecorder.macro.DocumentMacro;
 import org.jtool.macrorecorder.macro.ExecutionMacro;
 import org.jtool.macrorecorder.macro.TriggerMacro;
 import org.jtool.macrorecorder.macro.ResourceMacro;
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.jface.text.IDocument;
 
@@ -37,24 +41,32 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * @param recorder a recorder that sends macro events
      */
     public DocMacroRecorderOffEdit(IFile file, Recorder recorder) {
+        this(file, EditorUtilities.getDocument(file), recorder);
+    }
+    
+    /**
+     * Creates an object that records document macros related to a file.
+     * @param file the file
+     * @param doc the document of the file
+     * @param recorder a recorder that sends macro events
+     */
+    public DocMacroRecorderOffEdit(IFile file, IDocument doc, Recorder recorder) {
         super(EditorUtilities.getInputFilePath(file), recorder);
         
         this.file = file;
-        this.doc = EditorUtilities.getDocument(file);
+        this.doc = doc;
     }
     
     /**
      * Starts the recording of document macros.
      */
     public void start() {
-        if (file == null) {
+        if (file == null || doc == null) {
             return;
         }
         
         DocumentManager.register(doc, null, documentManager);
         
-        preCode = doc.get();
-        
         super.start();
     }
     
@@ -62,7 +74,7 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * Stops the recording of macros.
      */
     public void stop() {
-        if (file == null) {
+        if (file == null || doc == null) {
             return;
         }
         
@@ -71,11 +83,57 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
         super.stop();
     }
     
+    /**
+     * Tests if this recorder can be stopped without losing document changes.
+     * The recorder cannot be stopped while the buffer of its document is connected, even if it is not dirty,
+     * since nothing re-attaches a recorder before the first change of a clean buffer.
+     * @return <code>true</code> if the buffer of the document is no longer connected, otherwise <code>false</code>
+     */
+    public boolean isDetachable() {
+        if (file == null || doc == null) {
+            return true;
+        }
+        
+        ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        if (manager == null) {
+            return true;
+        }
+        ITextFileBuffer buffer = manager.getTextFileBuffer(file.getFullPath(), LocationKind.IFILE);
+        return buffer == null || buffer.getDocument() != doc;
+    }
+    
+    /**
+     * Prepares for taking over the state of another recorder.
+     * @param doc the document recorded by the other recorder
+     * @return <code>true</code> if this recorder records the same document, otherwise <code>false</code>
+     */
+    protected boolean prepare(IDocument doc) {
+        return file != null && this.doc == doc;
+    }
+    
+    /**
+     * Starts receiving document events after the state of another recorder was taken over.
+     */
+    protected void attach() {
+        DocumentManager.register(doc, null, documentManager);
+    }
+    
+    /**
+     * Stops receiving document events without dumping the pending macros, which are taken over by another recorder.
+     */
+    protected void detach() {
+        if (file == null || doc == null) {
+            return;
+        }
+        
+        DocumentManager.unregister(doc, null, documentManager);
+    }
+    
     /**
      * Records a document macro and its compressed macro.
      * @param macro the document macro
      */
-    protected void recordDocumentMacro(DocumentMacro macro) {
+    public void recordDocumentMacro(DocumentMacro macro) {
         super.recordDocumentMacro(macro);
     }
     
@@ -83,7 +141,7 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * Records a command execution macro.
      * @param macro the command execution macro
      */
-    protected void recordExecutionMacro(ExecutionMacro macro) {
+    public void recordExecutionMacro(ExecutionMacro macro) {
         super.recordExecutionMacro(macro);
         recordRawMacro(macro);
     }
@@ -92,7 +150,7 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * Records a trigger macro.
      * @param macro the trigger macro
      */
-    protected void recordTriggerMacro(TriggerMacro macro) {
+    public void recordTriggerMacro(TriggerMacro macro) {
         super.recordTriggerMacro(macro);
     }
     
@@ -100,7 +158,7 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * Records a resource change macro.
      * @param macro the resource change macro
      */
-    protected void recordResourceMacro(ResourceMacro macro) {
+    public void recordResourceMacro(ResourceMacro macro) {
         super.recordResourceMacro(macro);
     }
     
@@ -108,19 +166,15 @@ public class DocMacroRecorderOffEdit extends DocMacroRecorder {
      * Records a compressed macro into the operation history and its original one in .
      * @param macro a document macro
      */
-    protected void recordUndoRedoMacro(DocumentMacro macro) {
+    public void recordUndoRedoMacro(DocumentMacro macro) {
         super.recordUndoRedoMacro(macro);
     }
     
     /**
-     * Obtains the current contents of a file under recording.
-     * @return the contents of source code, or <code>null</code> if source code does not exist
+     * Obtains the current document of a file under recording.
+     * @return the document of source code, or <code>null</code> if source code does not exist
      */
-    protected String getCurrentCode() {
-        IDocument doc = EditorUtilities.getDocument(file);
-        if (doc != null) {
-            return doc.get();
-        }
-        return null;
+    protected IDocument getCurrentDocument() {
+        return doc;
     }
 }
@@ -6,7 +6,6 @@
 
 package org.jtool.macrorecorder.internal.recorder;
 
-import org.jtool.macrorecorder.recorder.MacroCompressor;
 import org.jtool.macrorecorder.recorder.Recorder;
 import org.jtool.macrorecorder.util.EditorUtilities;
 import org.jtool.macrorecorder.macro.DocumentMacro;
@@ -14,6 +13,7 @@ import org.jtool.macrorecorder.macro.ExecutionMacro;
 import org.jtool.macrorecorder.macro.TriggerMacro;
 import org.jtool.macrorecorder.macro.ResourceMacro;
 import org.jtool.macrorecorder.macro.CopyMacro;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.jface.text.IDocument;
@@ -30,14 +30,14 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
     private IEditorPart editor;
     
     /**
-     * The document of a file.
+     * The file opened on the editor.
      */
-    private IDocument doc;
+    private IFile file;
     
     /**
-     * A compressor that compresses macros.
+     * The document of a file.
      */
-    private MacroCompressor compressor;
+    private IDocument doc;
     
     /**
      * The styled text of an editor.
@@ -48,14 +48,12 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
      * Creates an object that records document macros performed on an editor.
      * @param editor the editor
      * @param recorder a recorder that sends macro events
-     * @param compressor a compressor that compresses macros
      */
-    public DocMacroRecorderOnEdit(IEditorPart editor, Recorder recorder, MacroCompressor compressor) {
+    public DocMacroRecorderOnEdit(IEditorPart editor, Recorder recorder) {
         super(EditorUtilities.getInputFilePath(editor), recorder);
         
         this.editor = editor;
-        this.doc = EditorUtilities.getDocument(editor);
-        this.compressor = compressor;
+        this.file = EditorUtilities.getInputFile(editor);
         this.styledText = EditorUtilities.getStyledText(editor);
     }
     
@@ -67,9 +65,12 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
             return;
         }
         
-        DocumentManager.register(doc, styledText, documentManager);
+        doc = EditorUtilities.connectDocument(file);
+        if (doc == null) {
+            return;
+        }
         
-        preCode = doc.get();
+        DocumentManager.register(doc, styledText, documentManager);
         
         super.start();
     }
@@ -78,70 +79,74 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
      * Stops the recording of macros.
      */
     public void stop() {
-        if (editor == null) {
+        if (editor == null || doc == null) {
             return;
         }
         
         DocumentManager.unregister(doc, styledText, documentManager);
         
         super.stop();
+        
+        EditorUtilities.disconnectDocument(file);
+        doc = null;
     }
     
     /**
-     * Records a document macro and its compressed macro.
-     * @param macro the document macro
+     * Prepares for taking over the state of another recorder.
+     * @param doc the document recorded by the other recorder
+     * @return <code>true</code> if this recorder records the same document, otherwise <code>false</code>
      */
-    protected void recordDocumentMacro(DocumentMacro macro) {
-        boolean isCutPaste = setCutPasteMacro(macro);
-        recordRawMacro(macro);
-        // System.out.println("MACRO = " + macro);
-        
-        if (isCutPaste) {
-            dumpMacros(macro);
-            return;
+    protected boolean prepare(IDocument doc) {
+        if (editor == null) {
+            return false;
         }
         
-        if (compressor.canCombine(macro)) {
-            DocumentMacro newMacro = compressor.combine(lastDocumentMacro, macro);
-            if (newMacro != null) {
-                lastDocumentMacro = newMacro;
-            } else {
-                dumpLastDocumentMacro();
-                lastDocumentMacro = macro;
+        this.doc = EditorUtilities.connectDocument(file);
+        if (this.doc != doc) {
+            if (this.doc != null) {
+                EditorUtilities.disconnectDocument(file);
+                this.doc = null;
             }
-        } else {
-            dumpMacros(macro);
+            return false;
         }
+        return true;
     }
     
     /**
-     * Tests if a macro indicates the cut or paste and sets its type according to its result.
-     * @param macro a macro that might be a cut or paste one
-     * @return <code>true</code> if a macro indicates the cut or paste, otherwise <code>false</code>
+     * Starts receiving document events after the state of another recorder was taken over.
      */
-    boolean setCutPasteMacro(DocumentMacro macro) {
-        if (lastRawMacro == null) {
-            return false;
+    protected void attach() {
+        DocumentManager.register(doc, styledText, documentManager);
+    }
+    
+    /**
+     * Stops receiving document events without dumping the pending macros, which are taken over by another recorder.
+     */
+    protected void detach() {
+        if (editor == null || doc == null) {
+            return;
         }
         
-        if (lastRawMacro instanceof ExecutionMacro) {
-            ExecutionMacro emacro = (ExecutionMacro)lastRawMacro;
-            if (emacro.getCommandId().compareTo("org.eclipse.ui.edit.cut") == 0) {
-                macro.setType("Cut");
-                return true;
-            } else if (emacro.getCommandId().compareTo("org.eclipse.ui.edit.paste") == 0) {
-                macro.setType("Paste");
-                return true;
-            }
-        }
-        return false;
+        DocumentManager.unregister(doc, styledText, documentManager);
+        
+        EditorUtilities.disconnectDocument(file);
+        doc = null;
+    }
+    
+    /**
+     * Tests if successive document macros are compressed.
+     * @return always <code>true</code> since the macros are performed on the editor
+     */
+    @Override
+    protected boolean isCompressing() {
+        return true;
     }
     
     /**
      * Records a command execution macro.
      * @param macro the command execution macro
      */
-    protected void recordExecutionMacro(ExecutionMacro macro) {
+    public void recordExecutionMacro(ExecutionMacro macro) {
         super.recordExecutionMacro(macro);
         
         if (styledText == null) {
@@ -168,7 +173,7 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
      * Records a trigger macro.
      * @param macro the trigger macro
      */
-    protected void recordTriggerMacro(TriggerMacro macro) {
+    public void recordTriggerMacro(TriggerMacro macro) {
         super.recordTriggerMacro(macro);
     }
     
@@ -176,7 +181,7 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
      * Records a resource change macro.
      * @param macro the resource change macro
      */
-    protected void recordResourceMacro(ResourceMacro macro) {
+    public void recordResourceMacro(ResourceMacro macro) {
         super.recordResourceMacro(macro);
     }
     
@@ -184,19 +189,15 @@ public class DocMacroRecorderOnEdit extends DocMacroRecorder {
      * Records a compressed macro into the operation history and its original one in .
      * @param macro a document macro
      */
-    protected void recordUndoRedoMacro(DocumentMacro macro) {
+    public void recordUndoRedoMacro(DocumentMacro macro) {
         super.recordUndoRedoMacro(macro);
     }
     
     /**
-     * Obtains the current contents of a file under recording.
-     * @return the contents of source code, or <code>null</code> if source code does not exist
+     * Obtains the current document of a file under recording.
+     * @return the document of source code, or <code>null</code> if source code does not exist
      */
-    protected String getCurrentCode() {
-        IDocument doc = EditorUtilities.getDocument(editor);
-        if (doc != null) {
-            return doc.get();
-        }
-        return null;
+    protected IDocument getCurrentDocument() {
+        return doc;
     }
 }
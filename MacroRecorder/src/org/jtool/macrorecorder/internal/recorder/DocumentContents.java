@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.internal.recorder;
+
+import org.jtool.macrorecorder.core.TextContents;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+
+/**
+ * Provides the contents of a document opened in the workbench.
+ * @author Katsuhisa Maruyama
+ */
+class DocumentContents implements TextContents {
+    
+    /**
+     * The document.
+     */
+    private IDocument doc;
+    
+    /**
+     * Creates an object that provides the contents of a document.
+     * @param doc the document
+     */
+    DocumentContents(IDocument doc) {
+        this.doc = doc;
+    }
+    
+    /**
+     * Returns the document.
+     * @return the document
+     */
+    IDocument getDocument() {
+        return doc;
+    }
+    
+    /**
+     * Returns the number of characters of the document.
+     * @return the length of the document
+     */
+    @Override
+    public int getLength() {
+        return doc.getLength();
+    }
+    
+    /**
+     * Returns a part of the contents of the document.
+     * @param offset the offset of the part
+     * @param length the length of the part
+     * @return the contents of the part
+     */
+    @Override
+    public String get(int offset, int length) {
+        try {
+            return doc.get(offset, length);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Returns the whole contents of the document.
+     * @return the contents of the document
+     */
+    @Override
+    public String get() {
+        return doc.get();
+    }
+    
+    /**
+     * Returns the modification stamp of the document.
+     * @return the modification stamp, or <code>UNKNOWN_MODIFICATION_STAMP</code> if it is not available
+     */
+    @Override
+    public long getModificationStamp() {
+        if (doc instanceof IDocumentExtension4) {
+            return ((IDocumentExtension4)doc).getModificationStamp();
+        }
+        return UNKNOWN_MODIFICATION_STAMP;
+    }
+}
@@ -6,9 +6,7 @@
 
 package org.jtool.macrorecorder.internal.recorder;
 
-import org.jtool.macrorecorder.macro.DocumentMacro;
-import org.jtool.macrorecorder.macro.TriggerMacro;
-import org.jtool.macrorecorder.macro.CancelMacro;
+import org.jtool.macrorecorder.core.DocumentEventHandler;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IDocument;
@@ -23,6 +21,7 @@ import org.eclipse.swt.widgets.Listener;
 
 /**
  * Manages document events.
+ * The events are translated into calls of <code>DocumentEventHandler</code>, which creates macros.
  * @author Katsuhisa Maruyama
  */
 public class DocumentManager implements IDocumentListener, IDocumentUndoListener, Listener {
@@ -33,26 +32,9 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
     private DocMacroRecorder recorder;
     
     /**
-     * The contents of the document inserted by this macro.
+     * A handler that converts document events into macros.
      */
-    private String insertedText;
-    
-    /**
-     * The contents of the document deleted by this macro.
-     */
-    private String deletedText;
-    
-    /**
-     * The kinds of a macro.
-     */
-    private enum UndoRedoKind {
-        UNDO, REDO, NO;
-    }
-    
-    /**
-     * The object that indicates the kind of undo/redo macro.
-     */
-    private UndoRedoKind kind;
+    private DocumentEventHandler handler;
     
     /**
      * Creates an object that records document events.
@@ -60,6 +42,7 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
      */
     public DocumentManager(DocMacroRecorder recorder) {
         this.recorder = recorder;
+        this.handler = new DocumentEventHandler(recorder);
     }
     
     /**
@@ -116,48 +99,8 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
      */
     @Override
     public void documentAboutToBeChanged(DocumentEvent event) {
-        insertedText = event.getText();
-        deletedText = "";
-        if (event.getLength() > 0) {
-            IDocument doc = event.getDocument();
-            
-            try {
-                deletedText = doc.get(event.getOffset(), event.getLength());
-            } catch (Exception e) {
-                e.printStackTrace();
-                return;
-            }
-        }
-        
-        if (insertedText.length() == 0 && deletedText.length() == 0) {
-            return;
-        }
-        
-        long time = Time.getCurrentTime();
-        String path = recorder.getPath();
-        
-        if (kind == UndoRedoKind.UNDO) {
-            DocumentMacro macro;
-            if (recorder.getParentMacro() == null) {
-                macro = new DocumentMacro(time, "Undo", path, event.getOffset(), insertedText, deletedText);
-            } else {
-                macro = new CancelMacro(time, "Undo", path, event.getOffset(), insertedText, deletedText);
-            }
-            recorder.recordUndoRedoMacro(macro);
-            
-        } else if (kind == UndoRedoKind.REDO) {
-            DocumentMacro macro;
-            if (recorder.getParentMacro() == null) {
-                macro = new DocumentMacro(time, "Redo", path, event.getOffset(), insertedText, deletedText);
-            } else {
-                macro = new CancelMacro(time, "Redo", path, event.getOffset(), insertedText, deletedText);
-            }
-            recorder.recordUndoRedoMacro(macro);
-            
-        } else {
-            DocumentMacro macro = new DocumentMacro(time, "Typing", path, event.getOffset(), insertedText, deletedText);
-            recorder.recordDocumentMacro(macro);
-        }
+        IDocument doc = event.getDocument();
+        handler.documentAboutToBeChanged(recorder.getContents(doc), event.getOffset(), event.getLength(), event.getText());
     }
     
     /**
@@ -166,6 +109,7 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
      */
     @Override
     public void documentChanged(DocumentEvent event) {
+        handler.documentChanged(recorder.getContents(event.getDocument()));
     }
     
     /**
@@ -174,41 +118,22 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
      */
     @Override
     public void documentUndoNotification(DocumentUndoEvent event) {
-        long time = Time.getCurrentTime();
-        String path = recorder.getPath();
-        
         int type = event.getEventType();
         if (type >= 16) {
             type = type - 16;
         }
         
         if (type == DocumentUndoEvent.ABOUT_TO_UNDO) {
-            if (recorder.getParentMacro() == null) {
-                TriggerMacro trigger = new TriggerMacro(time, "Undo", path, TriggerMacro.Kind.BEGIN);
-                recorder.recordTriggerMacro(trigger);
-            }
-            kind = UndoRedoKind.UNDO;
+            handler.aboutToUndo();
             
         } else if (type == DocumentUndoEvent.ABOUT_TO_REDO) {
-            if (recorder.getParentMacro() == null) {
-                TriggerMacro trigger = new TriggerMacro(time, "Redo", path, TriggerMacro.Kind.BEGIN);
-                recorder.recordTriggerMacro(trigger);
-            }
-            kind = UndoRedoKind.REDO;
+            handler.aboutToRedo();
             
         } else if (type == DocumentUndoEvent.UNDONE) {
-            if (recorder.getParentMacro() == null) {
-                TriggerMacro trigger = new TriggerMacro(time, "Undo", path, TriggerMacro.Kind.END);
-                recorder.recordTriggerMacro(trigger);
-            }
-            kind = UndoRedoKind.NO;
+            handler.undone();
             
         } else if (type == DocumentUndoEvent.REDONE) {
-            if (recorder.getParentMacro() == null) {
-                TriggerMacro trigger = new TriggerMacro(time, "Redo", path, TriggerMacro.Kind.END);
-                recorder.recordTriggerMacro(trigger);
-            }
-            kind = UndoRedoKind.NO;
+            handler.redone();
         }
     }
     
@@ -227,14 +152,7 @@ public class DocumentManager implements IDocumentListener, IDocumentUndoListener
         }
         
         if (cursorMoved) {
-            long time = Time.getCurrentTime();
-            String path = recorder.getPath();
-            
-            String commandId = "Cursor.position.change";
-            TriggerMacro trigger = new TriggerMacro(time, commandId, path, TriggerMacro.Kind.CURSOR_CHANGE);
-            recorder.recordTriggerMacro(trigger);
-            
-            recorder.setParentMacro(null);
+            handler.cursorMoved();
         }
     }
     
@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.internal.recorder;
+
+import org.jtool.macrorecorder.recorder.Recorder;
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.IFileBufferListener;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Manages file buffer events in order to attach recorders to files on demand.
+ * @author Katsuhisa Maruyama
+ */
+public class FileBufferManager implements IFileBufferListener {
+    
+    /**
+     * A recorder that attaches recorders to files.
+     */
+    private Recorder recorder;
+    
+    /**
+     * Creates an object that receives file buffer events.
+     * @param recorder a recorder that attaches recorders to files
+     */
+    public FileBufferManager(Recorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Registers a file buffer manager with the text file buffer manager,
+     * and attaches recorders to the files whose buffers are already connected.
+     * @param fm the file buffer manager
+     */
+    public static void register(FileBufferManager fm) {
+        ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        if (manager != null) {
+            manager.addFileBufferListener(fm);
+            
+            for (IFileBuffer buffer : manager.getFileBuffers()) {
+                fm.attach(buffer);
+            }
+        }
+    }
+    
+    /**
+     * Unregisters a file buffer manager with the text file buffer manager.
+     * @param fm the file buffer manager
+     */
+    public static void unregister(FileBufferManager fm) {
+        ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        if (manager != null) {
+            manager.removeFileBufferListener(fm);
+        }
+    }
+    
+    /**
+     * Receives an event when a file buffer was created.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void bufferCreated(IFileBuffer buffer) {
+        attach(buffer);
+    }
+    
+    /**
+     * Receives an event when a file buffer is disposed.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void bufferDisposed(IFileBuffer buffer) {
+        IFile file = getFile(buffer);
+        if (file != null) {
+            recorder.stopDocRecording(file);
+        }
+    }
+    
+    /**
+     * Receives an event when the dirty state of a file buffer changed.
+     * @param buffer the file buffer
+     * @param isDirty <code>true</code> if the buffer is dirty, otherwise <code>false</code>
+     */
+    @Override
+    public void dirtyStateChanged(IFileBuffer buffer, boolean isDirty) {
+        if (isDirty) {
+            attach(buffer);
+        }
+    }
+    
+    /**
+     * Receives an event when the content of a file buffer will be replaced.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void bufferContentAboutToBeReplaced(IFileBuffer buffer) {
+    }
+    
+    /**
+     * Receives an event when the content of a file buffer was replaced.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void bufferContentReplaced(IFileBuffer buffer) {
+    }
+    
+    /**
+     * Receives an event when the state of a file buffer will be changed.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void stateChanging(IFileBuffer buffer) {
+    }
+    
+    /**
+     * Receives an event when the state validation of a file buffer changed.
+     * @param buffer the file buffer
+     * @param isStateValidated <code>true</code> if the state is validated, otherwise <code>false</code>
+     */
+    @Override
+    public void stateValidationChanged(IFileBuffer buffer, boolean isStateValidated) {
+    }
+    
+    /**
+     * Receives an event when the file underlying a file buffer was moved.
+     * @param buffer the file buffer
+     * @param path the new location of the file
+     */
+    @Override
+    public void underlyingFileMoved(IFileBuffer buffer, IPath path) {
+    }
+    
+    /**
+     * Receives an event when the file underlying a file buffer was deleted.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void underlyingFileDeleted(IFileBuffer buffer) {
+    }
+    
+    /**
+     * Receives an event when the state of a file buffer failed to change.
+     * @param buffer the file buffer
+     */
+    @Override
+    public void stateChangeFailed(IFileBuffer buffer) {
+    }
+    
+    /**
+     * Attaches a recorder to the file of a file buffer.
+     * @param buffer the file buffer
+     */
+    private void attach(IFileBuffer buffer) {
+        if (!(buffer instanceof ITextFileBuffer)) {
+            return;
+        }
+        
+        IFile file = getFile(buffer);
+        if (file != null && file.getName().endsWith(".java")) {
+            recorder.startDocRecording(file, ((ITextFileBuffer)buffer).getDocument());
+        }
+    }
+    
+    /**
+     * Obtains the workspace file of a file buffer.
+     * @param buffer the file buffer
+     * @return the file, or <code>null</code> if the buffer is not related to any file in the workspace
+     */
+    private IFile getFile(IFileBuffer buffer) {
+        IPath location = buffer.getLocation();
+        if (location == null) {
+            return null;
+        }
+        
+        IResource res = ResourcesPlugin.getWorkspace().getRoot().findMember(location);
+        if (res instanceof IFile) {
+            return (IFile)res;
+        }
+        return null;
+    }
+}
@@ -7,10 +7,12 @@
 package org.jtool.macrorecorder.internal.recorder;
 
 import org.jtool.macrorecorder.Activator;
+import org.jtool.macrorecorder.core.DocumentRecorder;
 import org.jtool.macrorecorder.recorder.Recorder;
 import org.jtool.macrorecorder.util.EditorUtilities;
 import org.jtool.macrorecorder.macro.CompoundMacro;
 import org.jtool.macrorecorder.macro.Macro;
+import org.jtool.macrorecorder.macro.RawMacroLog;
 import org.jtool.macrorecorder.macro.ExecutionMacro;
 import org.jtool.macrorecorder.macro.TriggerMacro;
 import org.jtool.macrorecorder.macro.ResourceMacro;
@@ -18,7 +20,6 @@ import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.text.ITextSelection;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -33,9 +34,9 @@ public class MenuMacroRecorder {
     private Recorder recorder;
     
     /**
-     * The collection of raw macros that were recorded.
+     * The log of raw macros that were recorded.
      */
-    private List<Macro> rawMacros = new ArrayList<Macro>();
+    private RawMacroLog rawMacros = new RawMacroLog();
     
     /**
      * A compound macro that contains macros.
@@ -120,7 +121,7 @@ public class MenuMacroRecorder {
      * Sets a parent macro related to a file.
      * @param parent the parent macro, or <code>null</code> if no parent exists
      */
-    void setParentMacro(Macro parent) {
+    public void setParentMacro(Macro parent) {
         parentMacro = parent;
     }
     
@@ -128,7 +129,7 @@ public class MenuMacroRecorder {
      * Returns the parent macro.
      * @return the parent macro
      */
-    Macro getParentMacro() {
+    public Macro getParentMacro() {
         return parentMacro;
     }
     
@@ -174,7 +175,30 @@ public class MenuMacroRecorder {
      */
     protected void recordResourceMacro(ResourceMacro macro) {
         breakMacro();
+        dispatchResourceMacro(macro);
+    }
+    
+    /**
+     * Records resource change macros in bulk.
+     * The current macros are broken only once before the first macro.
+     * @param macros the collection of the resource change macros
+     */
+    protected void recordResourceMacros(List<ResourceMacro> macros) {
+        if (macros.isEmpty()) {
+            return;
+        }
         
+        breakMacro();
+        for (ResourceMacro macro : macros) {
+            dispatchResourceMacro(macro);
+        }
+    }
+    
+    /**
+     * Sends a resource change macro to the recorder related to its file.
+     * @param macro the resource change macro
+     */
+    private void dispatchResourceMacro(ResourceMacro macro) {
         String path = macro.getPath();
         DocMacroRecorder docMacroRecorder = getDocMacroRecorder(path);
         
@@ -210,11 +234,10 @@ public class MenuMacroRecorder {
                 
             } else if (tmacro.isEnd() || tmacro.isCursorChange()) {
                 if (compoundMacro != null) {
-                    compoundMacro.setRawMacros(new ArrayList<Macro>(rawMacros));
-                    compoundMacro.setTimes();
-                    rawMacros.clear();
+                    CompoundMacro last = compoundMacro.end();
+                    last.setRawMacros(rawMacros.take());
                     
-                    recorder.notifyMacro(compoundMacro);
+                    recorder.notifyMacro(last);
                 }
                 compoundMacro = null;
             }
@@ -222,9 +245,15 @@ public class MenuMacroRecorder {
         } else {
             if (compoundMacro != null) {
                 compoundMacro.addMacro(macro);
+                
+                if (compoundMacro.isSegmentFull()) {
+                    CompoundMacro segment = compoundMacro.takeSegment();
+                    segment.setRawMacros(rawMacros.take());
+                    
+                    recorder.notifyMacro(segment);
+                }
             } else {
-                macro.setRawMacros(new ArrayList<Macro>(rawMacros));
-                rawMacros.clear();
+                macro.setRawMacros(rawMacros.take());
                 
                 recorder.notifyMacro(macro);
             }
@@ -248,10 +277,7 @@ public class MenuMacroRecorder {
      * Break the current macro.
      */
     public void breakMacro() {
-        for (DocMacroRecorder docRecorder : Recorder.getDocRecorders()) {
-            docRecorder.dumpLastDocumentMacro();
-            docRecorder.needDiff();
-        }
+        DocumentRecorder.breakDirtyMacros(recorder);
     }
     
     /**
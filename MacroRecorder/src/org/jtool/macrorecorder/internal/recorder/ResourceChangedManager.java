@@ -14,6 +14,8 @@ import org.eclipse.jdt.core.JavaCore;
 import org.jtool.macrorecorder.macro.ResourceMacro;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
 
 /**
  * Manages operations related to element changes.
@@ -59,47 +61,42 @@ public class ResourceChangedManager implements IElementChangedListener {
         long time = Time.getCurrentTime();
         ChangeCollector collector = new ChangeCollector(event.getDelta());
         
-        for (IJavaElementDelta delta : collector.deltas) {
-            if (delta.getKind() == IJavaElementDelta.REMOVED) {
-                ResourceMacro macro = createResourceRemovedMacro(time, delta);
-                if (macro != null) {
-                    recorder.recordResourceMacro(macro);
-                }
+        List<ResourceMacro> macros = new ArrayList<ResourceMacro>(collector.removed.size());
+        for (Map.Entry<String, IJavaElementDelta> entry : collector.removed.entrySet()) {
+            ResourceMacro macro = createResourceRemovedMacro(time, entry.getKey(), entry.getValue());
+            if (macro != null) {
+                macros.add(macro);
             }
         }
+        recorder.recordResourceMacros(macros);
         
-        for (IJavaElementDelta delta : collector.deltas) {
-            if (delta.getKind() == IJavaElementDelta.ADDED) {
-                ResourceMacro macro = createResourceAddedMacro(time, delta);
-                if (macro != null) {
-                    recorder.recordResourceMacro(macro);
-                }
+        macros = new ArrayList<ResourceMacro>(collector.added.size());
+        for (Map.Entry<String, IJavaElementDelta> entry : collector.added.entrySet()) {
+            ResourceMacro macro = createResourceAddedMacro(time, entry.getKey(), entry.getValue());
+            if (macro != null) {
+                macros.add(macro);
             }
         }
+        recorder.recordResourceMacros(macros);
         
-        for (IJavaElementDelta delta : collector.deltas) {
-            if (delta.getKind() == IJavaElementDelta.CHANGED) {
-                ResourceMacro macro = createResourceChangedMacro(time, delta);
-                if (macro != null) {
-                    recorder.recordResourceMacro(macro);
-                }
+        macros = new ArrayList<ResourceMacro>(collector.changed.size());
+        for (Map.Entry<String, IJavaElementDelta> entry : collector.changed.entrySet()) {
+            ResourceMacro macro = createResourceChangedMacro(time, entry.getKey(), entry.getValue());
+            if (macro != null) {
+                macros.add(macro);
             }
         }
+        recorder.recordResourceMacros(macros);
     }
     
     /**
      * Creates a macro corresponding to the removed delta of the change.
      * @param time the time when the change occurred
+     * @param path the path of the changed element
      * @param delta the removed delta of the change
      * @return the created resource macro
      */
-    private ResourceMacro createResourceRemovedMacro(long time, IJavaElementDelta delta) {
-        IJavaElement elem = delta.getElement();
-        String path = elem.getPath().toString();
-        if (path == null) {
-            return null;
-        }
-        
+    private ResourceMacro createResourceRemovedMacro(long time, String path, IJavaElementDelta delta) {
         String type = "Removed";
         if ((delta.getFlags() & IJavaElementDelta.F_MOVED_TO) != 0) {
             if (isRenamed(delta.getElement(), delta.getMovedToElement())) {
@@ -109,22 +106,17 @@ public class ResourceChangedManager implements IElementChangedListener {
             }
         }
         
-        return new ResourceMacro(time, type, path, elem);
+        return new ResourceMacro(time, type, path, delta.getElement());
     }
     
     /**
      * Creates a macro corresponding to the added delta of the change.
      * @param time the time when the change occurred
+     * @param path the path of the changed element
      * @param delta the added delta of the change
      * @return the created resource macro
      */
-    private ResourceMacro createResourceAddedMacro(long time, IJavaElementDelta delta) {
-        IJavaElement elem = delta.getElement();
-        String path = elem.getPath().toString();
-        if (path == null) {
-            return null;
-        }
-        
+    private ResourceMacro createResourceAddedMacro(long time, String path, IJavaElementDelta delta) {
         String type = "Added";
         if ((delta.getFlags() & IJavaElementDelta.F_MOVED_FROM) != 0) {
             if (isRenamed(delta.getElement(), delta.getMovedFromElement())) {
@@ -134,28 +126,23 @@ public class ResourceChangedManager implements IElementChangedListener {
             }
         }
         
-        return new ResourceMacro(time, type, path, elem);
+        return new ResourceMacro(time, type, path, delta.getElement());
     }
     
     /**
      * Creates a macro corresponding to the changed delta of the change.
      * @param time the time when the change occurred
+     * @param path the path of the changed element
      * @param delta the changed delta of the change
      * @return the created resource macro
      */
-    private ResourceMacro createResourceChangedMacro(long time, IJavaElementDelta delta) {
-        IJavaElement elem = delta.getElement();
-        String path = elem.getPath().toString();
-        if (path == null) {
-            return null;
-        }
-        
+    private ResourceMacro createResourceChangedMacro(long time, String path, IJavaElementDelta delta) {
         if ((delta.getFlags() & IJavaElementDelta.F_CONTENT) != 0) {
             // System.out.println("CONTENT CHANGED" + path);
             return null;
         }
         
-        return new ResourceMacro(time, "Changed", path, elem);
+        return new ResourceMacro(time, "Changed", path, delta.getElement());
     }
     
     /**
@@ -178,14 +165,25 @@ public class ResourceChangedManager implements IElementChangedListener {
     }
     
     /**
-     * Collects change deltas.
+     * Collects change deltas, classifying them by their kinds in a single pass.
+     * Each batch is indexed by the paths of the changed elements and keeps the order in which the deltas were found.
      */
     class ChangeCollector {
         
         /**
-         * The collection of change deltas
+         * The removed deltas indexed by the paths of their elements.
          */
-        List<IJavaElementDelta> deltas = new ArrayList<IJavaElementDelta>();
+        Map<String, IJavaElementDelta> removed = new LinkedHashMap<String, IJavaElementDelta>();
+        
+        /**
+         * The added deltas indexed by the paths of their elements.
+         */
+        Map<String, IJavaElementDelta> added = new LinkedHashMap<String, IJavaElementDelta>();
+        
+        /**
+         * The changed deltas indexed by the paths of their elements.
+         */
+        Map<String, IJavaElementDelta> changed = new LinkedHashMap<String, IJavaElementDelta>();
         
         /**
          * Creates an object that collects the deltas of element changes.
@@ -198,19 +196,17 @@ public class ResourceChangedManager implements IElementChangedListener {
         /**
          * Collects all the deltas of the changes.
          * @param delta the root delta of the change
-         * @param deltas the collection of the deltas to be collected
          */
         private void collectDeltas(IJavaElementDelta delta) {
-            if (delta.getKind() == IJavaElementDelta.ADDED ||
-                delta.getKind() == IJavaElementDelta.REMOVED) {
-                if (!contain(delta)) {
-                    deltas.add(delta);
-                }
+            if (delta.getKind() == IJavaElementDelta.REMOVED) {
+                put(removed, delta);
+                
+            } else if (delta.getKind() == IJavaElementDelta.ADDED) {
+                put(added, delta);
+                
             } else if (delta.getKind() == IJavaElementDelta.CHANGED &&
                     ((delta.getFlags() & IJavaElementDelta.F_CONTENT) != 0)) {
-                if (!contain(delta)) {
-                    deltas.add(delta);
-                }
+                put(changed, delta);
             }
             
             for (IJavaElementDelta d : delta.getAffectedChildren()) {
@@ -219,19 +215,20 @@ public class ResourceChangedManager implements IElementChangedListener {
         }
         
         /**
-         * Tests if a given change delta was already contained in the change collection.
+         * Stores a change delta unless a delta of the same kind for the same element was already stored.
+         * @param deltas the deltas of the kind
          * @param delta the change delta
-         * @return <code>true</code> if the change delta was contained in the change collection, otherwise <code> false</code>
          */
-        private boolean contain(IJavaElementDelta delta) {
-            String path = delta.getElement().getPath().toString();
-            for (IJavaElementDelta d : deltas) {
-                String p = d.getElement().getPath().toString();
-                if (p.compareTo(path) == 0 && d.getKind() == delta.getKind()) {
-                    return true;
-                }
+        private void put(Map<String, IJavaElementDelta> deltas, IJavaElementDelta delta) {
+            IJavaElement elem = delta.getElement();
+            if (elem == null || elem.getPath() == null) {
+                return;
+            }
+            
+            String path = elem.getPath().toString();
+            if (!deltas.containsKey(path)) {
+                deltas.put(path, delta);
             }
-            return false;
         }
     }
 }
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.macro;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Stores captured source code by its contents, so that identical code is kept only once.
+ * Code no longer referenced by any macro is released by the garbage collector.
+ * @author Katsuhisa Maruyama
+ */
+class CodeStore {
+    
+    /**
+     * The canonical instances of the captured code indexed by their contents.
+     */
+    private static Map<String, WeakReference<String>> codes = new WeakHashMap<String, WeakReference<String>>();
+    
+    /**
+     * Returns the canonical instance of given code.
+     * @param code the code
+     * @return the stored code whose contents are the same as the given code
+     */
+    static String intern(String code) {
+        if (code == null || code.length() == 0) {
+            return code;
+        }
+        
+        synchronized (codes) {
+            WeakReference<String> ref = codes.get(code);
+            if (ref != null) {
+                String stored = ref.get();
+                if (stored != null) {
+                    return stored;
+                }
+            }
+            
+            codes.put(code, new WeakReference<String>(code));
+            return code;
+        }
+    }
+}
@@ -6,20 +6,88 @@
 
 package org.jtool.macrorecorder.macro;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stores a compound macro that contains macros.
+ * A compound macro that grows large is sent to listeners as a stream of segments framed by
+ * <code>BEGIN</code>, <code>SEGMENT</code> and <code>END</code>, so that the whole macro is not held in memory.
  * @author Katsuhisa Maruyama
  */
 public class CompoundMacro extends Macro {
     
+    /**
+     * The number of macros that fills a segment of a streamed compound macro.
+     */
+    public static final int SEGMENT_SIZE = 1024;
+    
+    /**
+     * The positions of compound macros in their streams.
+     */
+    public enum Frame {
+        
+        /**
+         * A compound macro that is sent as a whole.
+         */
+        WHOLE,
+        
+        /**
+         * The first segment of a streamed compound macro.
+         */
+        BEGIN,
+        
+        /**
+         * A middle segment of a streamed compound macro.
+         */
+        SEGMENT,
+        
+        /**
+         * The last segment of a streamed compound macro.
+         */
+        END;
+    }
+    
+    /**
+     * The generator of the identifiers of compound macros.
+     */
+    private static AtomicLong lastStreamId = new AtomicLong(0);
+    
     /**
      * The collection of macros contained in this compound macro.
      */
     private List<Macro> macros = new ArrayList<Macro>();
     
+    /**
+     * The positions of the contained document macros, indexed by their offsets and texts.
+     * The positions for each key are kept in the order of the addition.
+     */
+    private Map<MacroKey, ArrayDeque<Integer>> index = new HashMap<MacroKey, ArrayDeque<Integer>>();
+    
+    /**
+     * The number of canceled macros that are left as <code>null</code> in the collection of the contained macros.
+     */
+    private int tombstones = 0;
+    
+    /**
+     * The identifier shared by the segments of this compound macro.
+     */
+    private long streamId;
+    
+    /**
+     * The position of this compound macro in its stream.
+     */
+    private Frame frame = Frame.WHOLE;
+    
+    /**
+     * The index number of this segment, or the number of segments already sent.
+     */
+    private int segmentIndex = 0;
+    
     /**
      * Creates an object storing information on a compound macro.
      * @param stime the time when the macro started
@@ -28,6 +96,21 @@ public class CompoundMacro extends Macro {
      */
     public CompoundMacro(long stime, String type, String path) {
         super(stime, stime, type, path);
+        streamId = lastStreamId.incrementAndGet();
+    }
+    
+    /**
+     * Creates a segment of a compound macro.
+     * @param macro the compound macro
+     * @param frame the position of the segment in the stream
+     * @param macros the macros contained in the segment
+     */
+    private CompoundMacro(CompoundMacro macro, Frame frame, List<Macro> macros) {
+        super(macro.getStartTime(), macro.getStartTime(), macro.getType(), macro.getPath());
+        this.streamId = macro.streamId;
+        this.frame = frame;
+        this.segmentIndex = macro.segmentIndex;
+        this.macros = macros;
     }
     
     /**
@@ -35,6 +118,16 @@ public class CompoundMacro extends Macro {
      * @param macro the macro to be added
      */
     public void addMacro(Macro macro) {
+        if (macro instanceof DocumentMacro) {
+            DocumentMacro dm = (DocumentMacro)macro;
+            MacroKey key = new MacroKey(dm.getStart(), dm.getInsertedText(), dm.getDeletedText());
+            ArrayDeque<Integer> positions = index.get(key);
+            if (positions == null) {
+                positions = new ArrayDeque<Integer>(1);
+                index.put(key, positions);
+            }
+            positions.add(macros.size());
+        }
         macros.add(macro);
     }
     
@@ -43,7 +136,9 @@ public class CompoundMacro extends Macro {
      * @param the index number of the macro to be removed
      */
     public void removeMacro(int index) {
+        compact();
         macros.remove(index);
+        rebuildIndex();
     }
     
     /**
@@ -57,7 +152,8 @@ public class CompoundMacro extends Macro {
             return false;
         }
         
-        macros.remove(index);
+        macros.set(index, null);
+        tombstones++;
         return true;
     }
     
@@ -66,13 +162,87 @@ public class CompoundMacro extends Macro {
      * @return the the collection of the contained macros
      */
     public List<Macro> getMacros() {
+        compact();
         return macros;
     }
     
+    /**
+     * Tests if the macros stored in this compound macro fill a segment.
+     * @return <code>true</code> if the macros should be sent as a segment, otherwise <code>false</code>
+     */
+    public boolean isSegmentFull() {
+        return macros.size() - tombstones >= SEGMENT_SIZE;
+    }
+    
+    /**
+     * Takes the macros stored so far as a segment to be sent before this compound macro ends.
+     * The taken macros are removed from this compound macro.
+     * @return the segment
+     */
+    public CompoundMacro takeSegment() {
+        compact();
+        Frame f = segmentIndex == 0 ? Frame.BEGIN : Frame.SEGMENT;
+        CompoundMacro segment = new CompoundMacro(this, f, macros);
+        segment.setTimes();
+        if (segment.getEndTime() > endTime) {
+            endTime = segment.getEndTime();
+        }
+        
+        macros = new ArrayList<Macro>();
+        index.clear();
+        segmentIndex++;
+        return segment;
+    }
+    
+    /**
+     * Ends this compound macro.
+     * @return this compound macro, which is the last segment if segments were already taken
+     */
+    public CompoundMacro end() {
+        if (segmentIndex > 0) {
+            frame = Frame.END;
+        }
+        setTimes();
+        return this;
+    }
+    
+    /**
+     * Tests if segments of this compound macro were already taken.
+     * @return <code>true</code> if this compound macro is streamed, otherwise <code>false</code>
+     */
+    public boolean isStreamed() {
+        return segmentIndex > 0 || frame != Frame.WHOLE;
+    }
+    
+    /**
+     * Returns the identifier shared by the segments of this compound macro.
+     * @return the identifier
+     */
+    public long getStreamId() {
+        return streamId;
+    }
+    
+    /**
+     * Returns the position of this compound macro in its stream.
+     * @return the position
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+    
+    /**
+     * Returns the index number of this segment in its stream.
+     * @return the index number starting from <code>0</code>
+     */
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+    
     /**
      * Sets the starting and ending times.
      */
     public void setTimes() {
+        compact();
         for (Macro m : macros) {
             if (m.getStartTime() < startTime) {
                 startTime = m.getStartTime();
@@ -89,18 +259,48 @@ public class CompoundMacro extends Macro {
      * @return the index number of the corresponding macro
      */
     private int getIndexOfCorrespondingMacro(DocumentMacro macro) {
-        for (int i = 0; i < macros.size(); i++) {
-            Macro m = macros.get(i);
-            if (m instanceof DocumentMacro) {
-                DocumentMacro dm = (DocumentMacro)m;
-                if (dm.getStart() == macro.getStart() &&
-                    dm.getInsertedText().compareTo(macro.getDeletedText()) == 0 &&
-                    dm.getDeletedText().compareTo(macro.getInsertedText()) == 0) {
-                    return i;
-                }
+        MacroKey key = new MacroKey(macro.getStart(), macro.getDeletedText(), macro.getInsertedText());
+        ArrayDeque<Integer> positions = index.get(key);
+        if (positions == null) {
+            return -1;
+        }
+        
+        int i = positions.poll();
+        if (positions.isEmpty()) {
+            index.remove(key);
+        }
+        return i;
+    }
+    
+    /**
+     * Removes the canceled macros left in the collection of the contained macros.
+     */
+    private void compact() {
+        if (tombstones == 0) {
+            return;
+        }
+        
+        List<Macro> live = new ArrayList<Macro>(macros.size() - tombstones);
+        for (Macro m : macros) {
+            if (m != null) {
+                live.add(m);
             }
         }
-        return -1;
+        macros = live;
+        tombstones = 0;
+        rebuildIndex();
+    }
+    
+    /**
+     * Rebuilds the index of the contained document macros from their current positions.
+     */
+    private void rebuildIndex() {
+        List<Macro> ms = macros;
+        macros = new ArrayList<Macro>(ms.size());
+        index.clear();
+        for (Macro m : ms) {
+            addMacro(m);
+        }
     }
     
     /**
@@ -108,7 +308,72 @@ public class CompoundMacro extends Macro {
      * @return the string for printing
      */
     public String toString() {
-        return "COMP(" + getType() + ") = " + getPath() + " " +
+        String seg = frame == Frame.WHOLE ? "" : " " + frame.name() + "#" + segmentIndex;
+        return "COMP(" + getType() + ")" + seg + " = " + getPath() + " " +
                getStartTime() + "-" + getEndTime();
     }
+    
+    /**
+     * Identifies document macros by their offsets and texts.
+     */
+    private static class MacroKey {
+        
+        /**
+         * The offset of the macro.
+         */
+        private int start;
+        
+        /**
+         * The text inserted by the macro.
+         */
+        private String insertedText;
+        
+        /**
+         * The text deleted by the macro.
+         */
+        private String deletedText;
+        
+        /**
+         * The hash code combining the offset and the texts.
+         */
+        private int hash;
+        
+        /**
+         * Creates a key of a document macro.
+         * @param start the offset of the macro
+         * @param insertedText the text inserted by the macro
+         * @param deletedText the text deleted by the macro
+         */
+        MacroKey(int start, String insertedText, String deletedText) {
+            this.start = start;
+            this.insertedText = insertedText;
+            this.deletedText = deletedText;
+            this.hash = (start * 31 + insertedText.hashCode()) * 31 + deletedText.hashCode();
+        }
+        
+        /**
+         * Returns the hash code of this key.
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        /**
+         * Tests if this key equals to a given object.
+         * @param obj the object
+         * @return <code>true</code> if both identify the same offset and texts, otherwise <code>false</code>
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MacroKey)) {
+                return false;
+            }
+            
+            MacroKey key = (MacroKey)obj;
+            return hash == key.hash && start == key.start &&
+                   insertedText.equals(key.insertedText) && deletedText.equals(key.deletedText);
+        }
+    }
 }
@@ -105,6 +105,14 @@ public class DocumentMacro extends Macro {
         return insertedText.length() != 0 && deletedText.length() != 0;
     }
     
+    /**
+     * Tests if this macro neither inserts nor deletes any text.
+     * @return <code>true</code> if this macro changes nothing, otherwise <code>false</code>
+     */
+    public boolean isEmpty() {
+        return insertedText.length() == 0 && deletedText.length() == 0;
+    }
+    
     /**
      * Returns the string for printing, which does not contain a new line character at its end.
      * @return the string for printing
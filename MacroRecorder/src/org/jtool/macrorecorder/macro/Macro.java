@@ -6,6 +6,7 @@
 
 package org.jtool.macrorecorder.macro;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -113,9 +114,22 @@ public class Macro {
     
     /**
      * Returns the collection of raw macros that were recorded.
+     * Raw macros kept in a raw macro log are available until the macro is released, and an empty collection
+     * is returned after that.
      * @return raw macros
      */
     public List<Macro> getRawMacros() {
         return rawMacros;
     }
+    
+    /**
+     * Releases the raw macros of this macro after all the listeners have received it.
+     * The raw macros kept in a raw macro log are no longer available, and they are replaced with an empty collection.
+     */
+    public void releaseRawMacros() {
+        if (rawMacros instanceof RawMacroLog.Range) {
+            ((RawMacroLog.Range)rawMacros).release();
+            rawMacros = Collections.emptyList();
+        }
+    }
 }
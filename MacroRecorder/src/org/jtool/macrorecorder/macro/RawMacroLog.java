@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.macro;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Stores raw macros recorded by a recorder in an append-only log.
+ * Each macro refers to the range of the raw macros recorded for it instead of holding a copy of them.
+ * The log is divided into fixed-size segments, and the segments are released once all the ranges
+ * referring to them have been consumed.
+ * @author Katsuhisa Maruyama
+ */
+public class RawMacroLog {
+    
+    /**
+     * The number of raw macros stored in a segment.
+     */
+    private static final int SEGMENT_SIZE = 256;
+    
+    /**
+     * The segments that have not been released.
+     */
+    private List<Macro[]> segments = new ArrayList<Macro[]>();
+    
+    /**
+     * The index of the first raw macro stored in the first segment.
+     */
+    private long first = 0;
+    
+    /**
+     * The number of raw macros appended to this log.
+     */
+    private long size = 0;
+    
+    /**
+     * The index of the first raw macro that has not been taken as a range.
+     */
+    private long mark = 0;
+    
+    /**
+     * The starting indexes of the ranges that have not been consumed.
+     */
+    private TreeSet<Long> pending = new TreeSet<Long>();
+    
+    /**
+     * Creates an empty log.
+     */
+    public RawMacroLog() {
+    }
+    
+    /**
+     * Appends a raw macro to this log.
+     * @param macro the raw macro
+     */
+    public synchronized void add(Macro macro) {
+        int offset = (int)(size - first);
+        if (offset == segments.size() * SEGMENT_SIZE) {
+            segments.add(new Macro[SEGMENT_SIZE]);
+        }
+        segments.get(offset / SEGMENT_SIZE)[offset % SEGMENT_SIZE] = macro;
+        size++;
+    }
+    
+    /**
+     * Takes the raw macros appended since the last range was taken.
+     * The returned range stays valid until it is released.
+     * @return the range of the raw macros
+     */
+    public synchronized List<Macro> take() {
+        Range range = new Range(mark, size);
+        if (mark < size) {
+            pending.add(mark);
+        }
+        mark = size;
+        return range;
+    }
+    
+    /**
+     * Discards the raw macros appended since the last range was taken.
+     */
+    public synchronized void clear() {
+        mark = size;
+        reclaim();
+    }
+    
+    /**
+     * Returns the number of raw macros retained in this log.
+     * @return the number of the retained raw macros
+     */
+    public synchronized int getRetainedSize() {
+        return (int)(size - first);
+    }
+    
+    /**
+     * Returns a raw macro stored in this log.
+     * @param index the index of the raw macro
+     * @return the raw macro
+     */
+    private synchronized Macro get(long index) {
+        if (index < first || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        int offset = (int)(index - first);
+        return segments.get(offset / SEGMENT_SIZE)[offset % SEGMENT_SIZE];
+    }
+    
+    /**
+     * Marks a range as consumed and releases the segments no longer referred to.
+     * @param start the starting index of the range
+     */
+    private synchronized void release(long start) {
+        if (pending.remove(start)) {
+            reclaim();
+        }
+    }
+    
+    /**
+     * Releases the segments that are not referred to by any range that has not been consumed.
+     */
+    private void reclaim() {
+        long bound = mark;
+        if (!pending.isEmpty()) {
+            bound = Math.min(bound, pending.first());
+        }
+        
+        int count = (int)((bound - first) / SEGMENT_SIZE);
+        if (count > 0) {
+            segments.subList(0, count).clear();
+            first = first + (long)count * SEGMENT_SIZE;
+        }
+    }
+    
+    /**
+     * A range of raw macros stored in the log.
+     */
+    class Range extends AbstractList<Macro> {
+        
+        /**
+         * The index of the first raw macro of this range.
+         */
+        private final long start;
+        
+        /**
+         * The index next to the last raw macro of this range.
+         */
+        private final long end;
+        
+        /**
+         * A flag that indicates this range was released.
+         */
+        private volatile boolean released = false;
+        
+        /**
+         * Creates a range of raw macros.
+         * @param start the index of the first raw macro
+         * @param end the index next to the last raw macro
+         */
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+        
+        /**
+         * Returns a raw macro in this range.
+         * @param index the index of the raw macro in this range
+         * @return the raw macro
+         */
+        @Override
+        public Macro get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            if (released) {
+                throw new IllegalStateException("Raw macros were already released");
+            }
+            return RawMacroLog.this.get(start + index);
+        }
+        
+        /**
+         * Returns the number of raw macros in this range.
+         * @return the number of the raw macros
+         */
+        @Override
+        public int size() {
+            return (int)(end - start);
+        }
+        
+        /**
+         * Releases this range so that the log can reclaim its segments.
+         */
+        void release() {
+            if (!released) {
+                released = true;
+                RawMacroLog.this.release(start);
+            }
+        }
+    }
+}
@@ -31,10 +31,15 @@ public class ResourceMacro extends Macro {
      */
     private String identicalPath;
     
+    /**
+     * The changed element whose source code has not been captured yet.
+     */
+    private IJavaElement element;
+    
     /**
      * The contents of source code after the resource change.
      */
-    private String code;
+    private String code = "";
     
     /**
      * The encoding of the changed source code.
@@ -57,8 +62,7 @@ public class ResourceMacro extends Macro {
         super(time, time, type, path);
         this.target = getTarget(elem);
         this.identicalPath = getIdenticalPath(elem);
-        this.code = getCode(elem);
-        this.encoding = getEncoding(elem);
+        this.element = elem;
     }
     
     /**
@@ -91,9 +95,11 @@ public class ResourceMacro extends Macro {
     
     /**
      * Returns source code after this resource change.
+     * The source code is read when it is first requested.
      * @return the contents of the source code, or an empty string if the changed resource is not a file
      */
     public String getCode() {
+        captureCode();
         return code;
     }
     
@@ -102,9 +108,22 @@ public class ResourceMacro extends Macro {
      * @return the encoding of the changed source code, or <code>null</code>
      */
     public String getEncoding() {
+        captureCode();
         return encoding;
     }
     
+    /**
+     * Reads the source code and its encoding of the changed element unless they were already read.
+     * Identical source code captured by different macros is shared.
+     */
+    private synchronized void captureCode() {
+        if (element != null) {
+            code = CodeStore.intern(getCode(element));
+            encoding = getEncoding(element);
+            element = null;
+        }
+    }
+    
     /**
      * Sets the flag that indicates if the changed resource is currently edited.
      * @param bool <code>true</code> if the changed resource is currently edited, otherwise <code>false</code>
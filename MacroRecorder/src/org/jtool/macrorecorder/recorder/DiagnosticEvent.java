@@ -0,0 +1,212 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+import org.jtool.macrorecorder.macro.Macro;
+
+/**
+ * Stores information about a problem that a recorder detected and how the recorder recovered from it.
+ * @author Katsuhisa Maruyama
+ */
+public class DiagnosticEvent {
+    
+    /**
+     * The kinds of the problems.
+     */
+    public enum Kind {
+        
+        /**
+         * The text deleted by a document macro does not match the shadow code of the recorder.
+         */
+        MISMATCH;
+    }
+    
+    /**
+     * The kind of the problem.
+     */
+    private Kind kind;
+    
+    /**
+     * The time when the problem was detected.
+     */
+    private long time;
+    
+    /**
+     * The path of the file related to the problem.
+     */
+    private String path;
+    
+    /**
+     * The macro that caused the problem.
+     */
+    private Macro macro;
+    
+    /**
+     * The offset where the problem was detected.
+     */
+    private int offset;
+    
+    /**
+     * The length of the shadow code when the problem was detected.
+     */
+    private int shadowLength;
+    
+    /**
+     * The length of the document when the problem was detected, or <code>-1</code> if unknown.
+     */
+    private int documentLength;
+    
+    /**
+     * The hash of the text the macro expected.
+     */
+    private long expectedHash;
+    
+    /**
+     * The hash of the text found in the shadow code.
+     */
+    private long actualHash;
+    
+    /**
+     * A flag that indicates the shadow code was resynchronized with the document.
+     */
+    private boolean resynced;
+    
+    /**
+     * The number of difference macros generated by the resynchronization.
+     */
+    private int diffCount;
+    
+    /**
+     * Creates an object storing information about a problem.
+     * @param kind the kind of the problem
+     * @param time the time when the problem was detected
+     * @param path the path of the file related to the problem
+     * @param macro the macro that caused the problem
+     * @param offset the offset where the problem was detected
+     * @param shadowLength the length of the shadow code
+     * @param documentLength the length of the document, or <code>-1</code> if unknown
+     * @param expectedHash the hash of the text the macro expected
+     * @param actualHash the hash of the text found in the shadow code
+     * @param resynced <code>true</code> if the shadow code was resynchronized, otherwise <code>false</code>
+     * @param diffCount the number of difference macros generated by the resynchronization
+     */
+    public DiagnosticEvent(Kind kind, long time, String path, Macro macro, int offset, int shadowLength, int documentLength,
+                           long expectedHash, long actualHash, boolean resynced, int diffCount) {
+        this.kind = kind;
+        this.time = time;
+        this.path = path;
+        this.macro = macro;
+        this.offset = offset;
+        this.shadowLength = shadowLength;
+        this.documentLength = documentLength;
+        this.expectedHash = expectedHash;
+        this.actualHash = actualHash;
+        this.resynced = resynced;
+        this.diffCount = diffCount;
+    }
+    
+    /**
+     * Returns the kind of the problem.
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+    
+    /**
+     * Returns the time when the problem was detected.
+     * @return the time
+     */
+    public long getTime() {
+        return time;
+    }
+    
+    /**
+     * Returns the path of the file related to the problem.
+     * @return the path of the file
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * Returns the macro that caused the problem.
+     * @return the macro
+     */
+    public Macro getMacro() {
+        return macro;
+    }
+    
+    /**
+     * Returns the offset where the problem was detected.
+     * @return the offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Returns the length of the shadow code when the problem was detected.
+     * @return the length of the shadow code
+     */
+    public int getShadowLength() {
+        return shadowLength;
+    }
+    
+    /**
+     * Returns the length of the document when the problem was detected.
+     * @return the length of the document, or <code>-1</code> if unknown
+     */
+    public int getDocumentLength() {
+        return documentLength;
+    }
+    
+    /**
+     * Returns the hash of the text the macro expected.
+     * @return the hash value
+     */
+    public long getExpectedHash() {
+        return expectedHash;
+    }
+    
+    /**
+     * Returns the hash of the text found in the shadow code.
+     * @return the hash value
+     */
+    public long getActualHash() {
+        return actualHash;
+    }
+    
+    /**
+     * Tests if the shadow code was resynchronized with the document.
+     * @return <code>true</code> if the shadow code was resynchronized, otherwise <code>false</code>
+     */
+    public boolean isResynced() {
+        return resynced;
+    }
+    
+    /**
+     * Returns the number of difference macros generated by the resynchronization.
+     * @return the number of the difference macros
+     */
+    public int getDiffCount() {
+        return diffCount;
+    }
+    
+    /**
+     * Returns the string for printing, which does not contain a new line character at its end.
+     * @return the string for printing
+     */
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(kind.name() + " " + path + " offset=" + offset);
+        buf.append(" shadow=" + shadowLength + " document=" + documentLength);
+        buf.append(" expected=" + Long.toHexString(expectedHash) + " actual=" + Long.toHexString(actualHash));
+        buf.append(" resynced=" + resynced + " diffs=" + diffCount);
+        return buf.toString();
+    }
+}
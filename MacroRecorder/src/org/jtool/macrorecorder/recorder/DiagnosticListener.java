@@ -0,0 +1,21 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+/**
+ * Defines the listener interface for receiving problems detected by the recorders.
+ * @author Katsuhisa Maruyama
+ */
+public interface DiagnosticListener {
+    
+    /**
+     * Receives a diagnostic event when a recorder detects a problem.
+     * This method is called on the thread that detected the problem, so it should return quickly.
+     * @param evt the diagnostic event
+     */
+    public void diagnosticReported(DiagnosticEvent evt);
+}
@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in nanoseconds into a histogram whose buckets grow exponentially.
+ * Each power of two is divided into 32 buckets, so a recorded value is kept within about 3 percent of its precision
+ * from nanoseconds to minutes. Values are recorded without locks, so recorders can be called from any thread.
+ * @author Katsuhisa Maruyama
+ */
+public class LatencyHistogram {
+    
+    /**
+     * The number of bits that select a bucket within a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    
+    /**
+     * The number of buckets within a power of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    /**
+     * The largest value that is distinguished, which is about 18 minutes in nanoseconds.
+     */
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    
+    /**
+     * The number of the buckets.
+     */
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+    
+    /**
+     * The numbers of values recorded in the respective buckets.
+     */
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    
+    /**
+     * The sum of the recorded values.
+     */
+    private LongAdder sum = new LongAdder();
+    
+    /**
+     * The smallest recorded value.
+     */
+    private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    
+    /**
+     * The largest recorded value.
+     */
+    private AtomicLong max = new AtomicLong(0);
+    
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+    }
+    
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        
+        buckets.incrementAndGet(indexOf(Math.min(nanos, MAX_VALUE)));
+        sum.add(nanos);
+        
+        long m = min.get();
+        while (nanos < m && !min.compareAndSet(m, nanos)) {
+            m = min.get();
+        }
+        m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+    
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+    
+    /**
+     * Takes a snapshot of the recorded values.
+     * The snapshot is not atomic, so values recorded during the copy might be partly reflected.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total = total + counts[i];
+        }
+        
+        long mn = min.get();
+        if (mn == Long.MAX_VALUE) {
+            mn = 0;
+        }
+        return new Snapshot(counts, total, sum.sum(), mn, max.get());
+    }
+    
+    /**
+     * Returns the index of the bucket that contains a value.
+     * @param value the value
+     * @return the index of the bucket
+     */
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_COUNT) + (int)(value >>> shift);
+    }
+    
+    /**
+     * Returns the largest value contained in a bucket.
+     * @param index the index of the bucket
+     * @return the largest value of the bucket
+     */
+    private static long upperBoundOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long sub = index - (shift * SUB_BUCKET_COUNT);
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * Stores the values recorded in a histogram at a moment.
+     */
+    public static class Snapshot {
+        
+        /**
+         * The numbers of values in the respective buckets.
+         */
+        private long[] counts;
+        
+        /**
+         * The number of the values.
+         */
+        private long total;
+        
+        /**
+         * The sum of the values.
+         */
+        private long sum;
+        
+        /**
+         * The smallest value.
+         */
+        private long min;
+        
+        /**
+         * The largest value.
+         */
+        private long max;
+        
+        /**
+         * Creates a snapshot.
+         * @param counts the numbers of values in the respective buckets
+         * @param total the number of the values
+         * @param sum the sum of the values
+         * @param min the smallest value
+         * @param max the largest value
+         */
+        Snapshot(long[] counts, long total, long sum, long min, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+        
+        /**
+         * Returns the number of the recorded values.
+         * @return the number of the values
+         */
+        public long getCount() {
+            return total;
+        }
+        
+        /**
+         * Returns the smallest recorded value.
+         * @return the smallest value in nanoseconds, or <code>0</code> if no value was recorded
+         */
+        public long getMin() {
+            return min;
+        }
+        
+        /**
+         * Returns the largest recorded value.
+         * @return the largest value in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+        
+        /**
+         * Returns the mean of the recorded values.
+         * @return the mean in nanoseconds, or <code>0</code> if no value was recorded
+         */
+        public double getMean() {
+            if (total == 0) {
+                return 0;
+            }
+            return (double)sum / total;
+        }
+        
+        /**
+         * Returns the value at a given percentile.
+         * @param percentile the percentile between <code>0</code> and <code>100</code>
+         * @return the value in nanoseconds, which does not exceed the value at the percentile by more than the precision
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            
+            double p = Math.min(Math.max(percentile, 0), 100);
+            long rank = Math.max(1, (long)Math.ceil(p / 100 * total));
+            long count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count = count + counts[i];
+                if (count >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+        
+        /**
+         * Returns the number of recorded values that exceed a threshold.
+         * Values in the bucket that contains the threshold are not counted.
+         * @param nanos the threshold in nanoseconds
+         * @return the number of the values
+         */
+        public long getCountAbove(long nanos) {
+            long count = 0;
+            for (int i = indexOf(Math.min(Math.max(nanos, 0), MAX_VALUE)) + 1; i < counts.length; i++) {
+                count = count + counts[i];
+            }
+            return count;
+        }
+        
+        /**
+         * Returns the string for printing, which does not contain a new line character at its end.
+         * @return the string for printing
+         */
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            buf.append("count:" + total);
+            buf.append(" mean:" + String.format("%.0f", getMean()));
+            buf.append(" p50:" + getValueAtPercentile(50));
+            buf.append(" p99:" + getValueAtPercentile(99));
+            buf.append(" p999:" + getValueAtPercentile(99.9));
+            buf.append(" max:" + max);
+            return buf.toString();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+/**
+ * Defines the management interface that exposes a latency histogram of the recorders through JMX.
+ * All the values are in nanoseconds.
+ * @author Katsuhisa Maruyama
+ */
+public interface LatencyMXBean {
+    
+    /**
+     * Returns the number of the recorded latencies.
+     * @return the number of the latencies
+     */
+    public long getCount();
+    
+    /**
+     * Returns the mean of the recorded latencies.
+     * @return the mean
+     */
+    public double getMean();
+    
+    /**
+     * Returns the median of the recorded latencies.
+     * @return the median
+     */
+    public long getP50();
+    
+    /**
+     * Returns the 99th percentile of the recorded latencies.
+     * @return the 99th percentile
+     */
+    public long getP99();
+    
+    /**
+     * Returns the 99.9th percentile of the recorded latencies.
+     * @return the 99.9th percentile
+     */
+    public long getP999();
+    
+    /**
+     * Returns the largest recorded latency.
+     * @return the largest latency
+     */
+    public long getMax();
+    
+    /**
+     * Returns the number of recorded latencies that exceed the alert threshold.
+     * @return the number of the latencies
+     */
+    public long getCountAboveThreshold();
+}
@@ -10,16 +10,93 @@ import org.jtool.macrorecorder.macro.DocumentMacro;
 
 /**
  * Compresses macros.
+ * Successive document macros are combined unless they are separated by an idle time longer than a time window,
+ * the combined text exceeds a length limit, or the text contains a delimiter character.
+ * A deletion of text typed just before is folded into the typing, so typing followed by backspacing cancels out.
+ * Subclasses can be set through <code>Recorder.setMacroCompressor</code> to change these rules.
  * @author Katsuhisa Maruyama
  */
 public class MacroCompressor {
     
+    /**
+     * The default idle time in milliseconds that ends the combination of macros.
+     */
+    public static final long DEFAULT_IDLE_TIME = 3000;
+    
+    /**
+     * The default maximum length of the text of a combined macro.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 512;
+    
+    /**
+     * The idle time in milliseconds that ends the combination of macros, or <code>0</code> if no time window is applied.
+     */
+    private long idleTime = DEFAULT_IDLE_TIME;
+    
+    /**
+     * The maximum length of the text of a combined macro, or <code>0</code> if the length is not limited.
+     */
+    private int maxLength = DEFAULT_MAX_LENGTH;
+    
+    /**
+     * A flag that indicates if deletions of text typed just before are folded.
+     */
+    private boolean foldCancellation = true;
+    
     /**
      * Creates an object compressing macros.
      */
     public MacroCompressor() {
     }
     
+    /**
+     * Sets the idle time that ends the combination of macros.
+     * @param time the idle time in milliseconds, or <code>0</code> if no time window is applied
+     */
+    public void setIdleTime(long time) {
+        idleTime = Math.max(0, time);
+    }
+    
+    /**
+     * Returns the idle time that ends the combination of macros.
+     * @return the idle time in milliseconds, or <code>0</code> if no time window is applied
+     */
+    public long getIdleTime() {
+        return idleTime;
+    }
+    
+    /**
+     * Sets the maximum length of the text of a combined macro.
+     * @param length the maximum length, or <code>0</code> if the length is not limited
+     */
+    public void setMaxLength(int length) {
+        maxLength = Math.max(0, length);
+    }
+    
+    /**
+     * Returns the maximum length of the text of a combined macro.
+     * @return the maximum length, or <code>0</code> if the length is not limited
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+    
+    /**
+     * Sets the flag that indicates if deletions of text typed just before are folded.
+     * @param bool <code>true</code> if the deletions are folded, otherwise <code>false</code>
+     */
+    public void setFoldCancellation(boolean bool) {
+        foldCancellation = bool;
+    }
+    
+    /**
+     * Tests if deletions of text typed just before are folded.
+     * @return <code>true</code> if the deletions are folded, otherwise <code>false</code>
+     */
+    public boolean getFoldCancellation() {
+        return foldCancellation;
+    }
+    
     /**
      * Tests if a document macros can be combined with its previous macro.
      * @param macro the document macro
@@ -56,19 +133,76 @@ public class MacroCompressor {
             return null;
         }
         
-        if (next.isInsert()) {
-            return combineInsertMacro(last, next);
+        if (last != null && !withinTimeWindow(last, next)) {
+            return null;
         }
         
-        if (next.isDelete()) {
-            return combineDeleteMacro(last, next);
+        DocumentMacro macro = null;
+        if (foldCancellation && last != null && next.isDelete()) {
+            macro = foldDeleteMacro(last, next);
         }
         
-        if (next.isReplace()) {
-            return compressReplaceMacro(last, next);
+        if (macro == null) {
+            if (next.isInsert()) {
+                macro = combineInsertMacro(last, next);
+            } else if (next.isDelete()) {
+                macro = combineDeleteMacro(last, next);
+            } else if (next.isReplace()) {
+                macro = compressReplaceMacro(last, next);
+            }
         }
         
-        return null;
+        if (macro != null && macro != next && exceedsMaxLength(macro)) {
+            return null;
+        }
+        return macro;
+    }
+    
+    /**
+     * Tests if two successive macros were performed within the time window.
+     * @param last the former document macro
+     * @param next the latter document macro
+     * @return <code>true</code> if the idle time between the macros does not exceed the limit, otherwise <code>false</code>
+     */
+    protected boolean withinTimeWindow(DocumentMacro last, DocumentMacro next) {
+        return idleTime == 0 || next.getStartTime() - last.getEndTime() <= idleTime;
+    }
+    
+    /**
+     * Tests if the text of a combined macro is too long.
+     * @param macro the combined macro
+     * @return <code>true</code> if the inserted or deleted text exceeds the limit, otherwise <code>false</code>
+     */
+    protected boolean exceedsMaxLength(DocumentMacro macro) {
+        return maxLength != 0 &&
+               (macro.getInsertedText().length() > maxLength || macro.getDeletedText().length() > maxLength);
+    }
+    
+    /**
+     * Folds a deletion into the former macro when the deletion removes text inserted by the former one.
+     * The folded macro is empty if the deletion cancels the former macro out.
+     * @param last the former document macro that represents insertion or replacement
+     * @param next the latter document macro that represents deletion
+     * @return the folded macro, or <code>null</code> if the macros cannot be folded
+     */
+    protected DocumentMacro foldDeleteMacro(DocumentMacro last, DocumentMacro next) {
+        if (!(last.isInsert() || last.isReplace()) ||
+            !combineWith(last.getInsertedText()) || !combineWith(last.getDeletedText())) {
+            return null;
+        }
+        
+        String itext = last.getInsertedText();
+        int istart = last.getStart();
+        int iend = istart + itext.length();
+        int dstart = next.getStart();
+        int dend = dstart + next.getDeletedText().length();
+        if (dstart < istart || dend > iend) {
+            return null;
+        }
+        
+        String text = itext.substring(0, dstart - istart) + itext.substring(dend - istart);
+        return new DocumentMacro(last.getStartTime(), next.getEndTime(),
+                                 last.getType(), last.getPath(), istart, text, last.getDeletedText());
     }
     
     /**
@@ -0,0 +1,362 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers macro events to listeners on a background thread.
+ * Events are kept in a bounded lock-free ring buffer and delivered by a single thread
+ * in the order they were sent, so macros related to the same file never overtake each other.
+ * @author Katsuhisa Maruyama
+ */
+class MacroDispatcher implements Runnable {
+    
+    /**
+     * The time in nanoseconds a flushing thread sleeps between checks of the delivered events.
+     */
+    private static final long FLUSH_WAIT = TimeUnit.MICROSECONDS.toNanos(250);
+    
+    /**
+     * The collection of listeners that receives macro events.
+     */
+    private List<MacroListener> listeners;
+    
+    /**
+     * The slots of the ring buffer.
+     */
+    private AtomicReferenceArray<MacroEvent> buffer;
+    
+    /**
+     * The sequence numbers that indicate whether each slot is ready to be written or read.
+     */
+    private AtomicLongArray sequences;
+    
+    /**
+     * The mask for converting a sequence number into the index of a slot.
+     */
+    private int mask;
+    
+    /**
+     * The number of events that were put into the queue.
+     */
+    private AtomicLong tail = new AtomicLong();
+    
+    /**
+     * The number of events that were delivered to the listeners.
+     */
+    private volatile long head;
+    
+    /**
+     * The number of raw macro events discarded due to the overflow of the queue.
+     */
+    private AtomicLong discarded = new AtomicLong();
+    
+    /**
+     * The policy applied when the queue is full.
+     */
+    private volatile Recorder.OverflowPolicy policy = Recorder.OverflowPolicy.BLOCK;
+    
+    /**
+     * The thread that delivers events.
+     */
+    private volatile Thread thread;
+    
+    /**
+     * A flag that indicates the dispatcher thread is waiting for events.
+     */
+    private volatile boolean idle;
+    
+    /**
+     * Creates a dispatcher that delivers macro events.
+     * @param listeners the listeners that receive the events
+     * @param capacity the minimum number of events that can be queued
+     */
+    MacroDispatcher(List<MacroListener> listeners, int capacity) {
+        this.listeners = listeners;
+        
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        buffer = new AtomicReferenceArray<MacroEvent>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+    
+    /**
+     * Sets the policy applied when the queue is full.
+     * @param policy the overflow policy
+     */
+    void setOverflowPolicy(Recorder.OverflowPolicy policy) {
+        if (policy != null) {
+            this.policy = policy;
+        }
+    }
+    
+    /**
+     * Returns the number of raw macro events discarded due to the overflow of the queue.
+     * @return the number of the discarded events
+     */
+    long getDiscardedCount() {
+        return discarded.get();
+    }
+    
+    /**
+     * Starts the thread that delivers events.
+     */
+    synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "MacroRecorder-Dispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    
+    /**
+     * Delivers all the pending events and terminates the thread.
+     */
+    synchronized void stop() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        
+        flush(0);
+        thread = null;
+        LockSupport.unpark(t);
+        
+        if (t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        drain();
+    }
+    
+    /**
+     * Sends an event to the listeners.
+     * Without a running dispatcher thread, the event is delivered on the calling thread after the queued events,
+     * and never while the queue is being drained by another thread.
+     * @param evt the event to be sent
+     */
+    void dispatch(MacroEvent evt) {
+        while (true) {
+            Thread t = thread;
+            if (t == Thread.currentThread()) {
+                deliver(evt);
+                return;
+            }
+            
+            if (t == null || !t.isAlive()) {
+                if (deliverInline(evt)) {
+                    return;
+                }
+            } else if (enqueue(evt, t)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Puts an event into the queue for the dispatcher thread.
+     * @param evt the event to be sent
+     * @param t the dispatcher thread
+     * @return <code>true</code> if the event was queued or discarded, or <code>false</code> if the dispatcher thread
+     * stopped before the event was queued
+     */
+    private boolean enqueue(MacroEvent evt, Thread t) {
+        while (!offer(evt)) {
+            if (policy == Recorder.OverflowPolicy.DISCARD_RAW && evt.getEventType() == MacroEvent.RAW_MACRO) {
+                discarded.incrementAndGet();
+                return true;
+            }
+            
+            LockSupport.unpark(t);
+            Thread.yield();
+            
+            if (thread != t || !t.isAlive()) {
+                return false;
+            }
+        }
+        
+        if (thread != t) {
+            deliverInline(null);
+        } else if (idle) {
+            LockSupport.unpark(t);
+        }
+        return true;
+    }
+    
+    /**
+     * Delivers the queued events and an event on the calling thread while no dispatcher thread is running.
+     * This method holds the same lock as <code>stop()</code>, so that it waits until the queue is drained by a stop.
+     * @param evt the event to be delivered after the queued events, or <code>null</code> if none
+     * @return <code>true</code> if the events were delivered, or <code>false</code> if a dispatcher thread was started
+     */
+    private synchronized boolean deliverInline(MacroEvent evt) {
+        Thread t = thread;
+        if (t != null && t.isAlive()) {
+            return evt == null;
+        }
+        
+        drain();
+        if (evt != null) {
+            deliver(evt);
+        }
+        return true;
+    }
+    
+    /**
+     * Delivers all the queued events on the calling thread.
+     * This method is called only while no dispatcher thread takes events from the queue.
+     */
+    private void drain() {
+        MacroEvent evt;
+        while ((evt = poll()) != null) {
+            deliver(evt);
+            head = head + 1;
+        }
+    }
+    
+    /**
+     * Waits until all the events sent before this call have been delivered.
+     * Returns immediately when it is called on the dispatcher thread.
+     * @param timeout the maximum time to wait in milliseconds, or <code>0</code> to wait forever
+     * @return <code>true</code> if all the events were delivered, otherwise <code>false</code>
+     */
+    boolean flush(long timeout) {
+        Thread t = thread;
+        if (t == null || t == Thread.currentThread()) {
+            return true;
+        }
+        
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (head < target) {
+            if (timeout > 0 && System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            if (!t.isAlive()) {
+                return false;
+            }
+            
+            LockSupport.unpark(t);
+            LockSupport.parkNanos(FLUSH_WAIT);
+        }
+        return true;
+    }
+    
+    /**
+     * Delivers queued events until the dispatcher is stopped.
+     * The thread parks without a timeout while the queue is empty; a sender that finds it idle after queuing
+     * an event unparks it, and a stop unparks it after clearing the thread. The events left in the queue
+     * after a stop are delivered by the stopping thread.
+     */
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            MacroEvent evt = poll();
+            if (evt != null) {
+                deliver(evt);
+                head = head + 1;
+                continue;
+            }
+            
+            idle = true;
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+            idle = false;
+        }
+    }
+    
+    /**
+     * Puts an event into the queue.
+     * @param evt the event
+     * @return <code>true</code> if the event was queued, or <code>false</code> if the queue is full
+     */
+    private boolean offer(MacroEvent evt) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int)(pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, evt);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+                
+            } else if (diff < 0) {
+                return false;
+                
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * Takes an event from the queue. This method is called only by the dispatcher thread, or by a thread that holds
+     * the lock of this dispatcher while no dispatcher thread is running.
+     * @return the event, or <code>null</code> if the queue is empty
+     */
+    private MacroEvent poll() {
+        long pos = head;
+        int index = (int)(pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        
+        MacroEvent evt = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.set(index, pos + mask + 1);
+        return evt;
+    }
+    
+    /**
+     * Tests if the queue has no event ready to be delivered.
+     * @return <code>true</code> if the queue is empty, otherwise <code>false</code>
+     */
+    private boolean isEmpty() {
+        long pos = head;
+        return sequences.get((int)(pos & mask)) != pos + 1;
+    }
+    
+    /**
+     * Delivers an event to all the listeners.
+     * The raw macros of a general macro are released after all the listeners have received it.
+     * @param evt the event
+     */
+    private void deliver(MacroEvent evt) {
+        for (MacroListener listener : listeners) {
+            try {
+                if (evt.getEventType() == MacroEvent.RAW_MACRO) {
+                    listener.documentChanged(evt);
+                } else {
+                    listener.macroAdded(evt);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        if (evt.getEventType() != MacroEvent.RAW_MACRO) {
+            evt.getMacro().releaseRawMacros();
+        }
+    }
+}
@@ -14,6 +14,8 @@ public interface MacroListener {
     
     /**
      * Receives a macro event when a new macro is added.
+     * The raw macros of the macro are available only while this method is running,
+     * and the macro returns an empty collection of raw macros after that.
      * @param evt the macro event
      */
     public void macroAdded(MacroEvent evt);
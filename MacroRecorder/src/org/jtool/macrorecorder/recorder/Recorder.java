@@ -6,34 +6,65 @@
 
 package org.jtool.macrorecorder.recorder;
 
-import org.jtool.macrorecorder.Activator;
+import org.jtool.macrorecorder.core.DocumentRecorder;
+import org.jtool.macrorecorder.core.RecordingContext;
 import org.jtool.macrorecorder.internal.recorder.DocMacroRecorder;
 import org.jtool.macrorecorder.internal.recorder.DocMacroRecorderOnEdit;
 import org.jtool.macrorecorder.internal.recorder.DocMacroRecorderOffEdit;
+import org.jtool.macrorecorder.internal.recorder.FileBufferManager;
 import org.jtool.macrorecorder.internal.recorder.MenuMacroRecorder;
 import org.jtool.macrorecorder.macro.Macro;
 import org.jtool.macrorecorder.util.EditorUtilities;
-import org.jtool.macrorecorder.util.WorkspaceUtilities;
-import org.eclipse.jface.dialogs.ProgressMonitorDialog;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.ui.IEditorPart;
-import org.eclipse.ui.IWorkbenchWindow;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.jface.operation.IRunnableWithProgress;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Records operations and menu actions performed on Eclipse.
+ * This recorder is the recording context of the recorders that record document macros on the workbench.
  * @author Katsuhisa Maruyama
  */
-public class Recorder {
+public class Recorder implements RecordingContext {
+    
+    /**
+     * The policies applied when macro events are sent faster than listeners receive them.
+     */
+    public enum OverflowPolicy {
+        
+        /**
+         * Waits until the pending events are delivered.
+         */
+        BLOCK,
+        
+        /**
+         * Discards raw macro events and waits only for general macro events.
+         */
+        DISCARD_RAW;
+    }
+    
+    /**
+     * The maximum number of macro events waiting for delivery.
+     */
+    private static final int DISPATCH_CAPACITY = 8192;
+    
+    /**
+     * The maximum number of recorders attached to files that are not opened on editors.
+     * Recorders whose file buffers are still connected are kept beyond this limit.
+     */
+    private static final int MAX_IDLE_DOC_RECORDERS = 256;
+    
+    /**
+     * The number of locks that guard the handoff of recorders between files.
+     */
+    private static final int LOCK_STRIPES = 64;
     
     /**
      * The single instance of this recorder.
@@ -43,28 +74,68 @@ public class Recorder {
     /**
      * The collection of recorders that record document macros.
      */
-    private static Map<String, DocMacroRecorder> docRecorders = new HashMap<String, DocMacroRecorder>();
+    private static Map<String, DocMacroRecorder> docRecorders = new ConcurrentHashMap<String, DocMacroRecorder>();
+    
+    /**
+     * The recorders attached to files that are not opened on editors, in order of their last attachment.
+     * This map is guarded by itself.
+     */
+    private static Map<DocMacroRecorderOffEdit, Boolean> idleDocRecorders =
+            new LinkedHashMap<DocMacroRecorderOffEdit, Boolean>(16, 0.75f, true);
+    
+    /**
+     * The locks that serialize the start and stop of recorders related to the same file.
+     */
+    private static Object[] docRecorderLocks = new Object[LOCK_STRIPES];
+    
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            docRecorderLocks[i] = new Object();
+        }
+    }
+    
+    /**
+     * The collection of recorders that might have pending macros or unsynchronized document changes.
+     */
+    private static Set<DocumentRecorder> dirtyDocRecorders = ConcurrentHashMap.newKeySet();
     
     /**
      * A recorder that records menu actions.
      */
     private MenuMacroRecorder menuRecorder;
     
+    /**
+     * A manager that attaches recorders to files whose buffers are connected.
+     */
+    private FileBufferManager fileBufferManager;
+    
     /**
      * A compressor that compresses macros.
      */
-    private MacroCompressor compressor;
+    private volatile MacroCompressor compressor;
     
     /**
      * The collection of listeners that receives macro events.
      */
-    private List<MacroListener> macroListeners = new ArrayList<MacroListener>();
+    private List<MacroListener> macroListeners = new CopyOnWriteArrayList<MacroListener>();
+    
+    /**
+     * The collection of listeners that receives diagnostic events.
+     */
+    private List<DiagnosticListener> diagnosticListeners = new CopyOnWriteArrayList<DiagnosticListener>();
+    
+    /**
+     * A dispatcher that delivers macro events to the listeners off the UI thread.
+     */
+    private MacroDispatcher dispatcher;
     
     /**
      * Creates an object that records macros.
      */
     private Recorder() {
         this.compressor = new MacroCompressor();
+        this.fileBufferManager = new FileBufferManager(this);
+        this.dispatcher = new MacroDispatcher(macroListeners, DISPATCH_CAPACITY);
     }
     
     /**
@@ -85,83 +156,117 @@ public class Recorder {
         }
     }
     
+    /**
+     * Returns the compressor that compresses macros.
+     * @return the compressor
+     */
+    @Override
+    public MacroCompressor getMacroCompressor() {
+        return compressor;
+    }
+    
+    /**
+     * Sets the policy applied when the queue of macro events is full.
+     * @param policy the overflow policy
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        dispatcher.setOverflowPolicy(policy);
+    }
+    
     /**
      * Starts the recording of document macros performed on an editor.
      */
     public synchronized void start() {
+        dispatcher.start();
+        
         menuRecorder = MenuMacroRecorder.getInstance();
         menuRecorder.setRecorder(this);
         menuRecorder.start();
         
-        startDocRecording(this);
-    }
-    
-    /**
-     * Starts the recording of document macros.
-     * @param recorder the recorder
-     */
-    private void startDocRecording(final Recorder recorder) {
-        Display.getDefault().asyncExec(new Runnable() {
-            
-            /**
-             * Displays the progress monitor.
-             */
-            @Override
-            public void run() {
-                try {
-                    IWorkbenchWindow window = Activator.getWorkbenchWindow();
-                    // window.run(true, true, new IRunnableWithProgress() {
-                    ProgressMonitorDialog dialog = new ProgressMonitorDialog(window.getShell());
-                    dialog.run(true, true, new IRunnableWithProgress() {
-                        
-                        /**
-                         * Attaches a recorder to each of collected source files.
-                         * @param monitor the progress monitor to use to display progress
-                         * @exception InvocationTargetException if the run method must propagate a checked exception
-                         * @exception InterruptedException if the operation detects a request to cancel
-                         */
-                        @Override
-                        public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-                            Collection<ICompilationUnit> cus = WorkspaceUtilities.collectAllCompilationUnits();
-                            monitor.beginTask("Attaching a recorder ... ", cus.size());
-                            
-                            int num = 1;
-                            for (ICompilationUnit cu : cus) {
-                                IFile file = (IFile)cu.getResource();
-                                
-                                if (monitor.isCanceled()) {
-                                    monitor.done();
-                                    throw new InterruptedException();
-                                }
-                                
-                                monitor.subTask(String.valueOf(num) + "/" + cus.size() + " " + file.getFullPath().toString());
-                                
-                                startDocRecording(file, recorder);
-                                
-                                num++;
-                                monitor.worked(1);
-                                // Thread.sleep(1000); // for testing
-                            }
-                            
-                            monitor.done();
-                        }
-                    });
-                } catch (InvocationTargetException e) {
-                    e.printStackTrace();
-                } catch (InterruptedException e) {
-                    stop();
+        FileBufferManager.register(fileBufferManager);
+        
+        RecorderStatistics.getInstance().registerMBeans();
+    }
+    
+    /**
+     * Starts the recording of document macros related to a file whose buffer was connected or changed.
+     * @param file the file
+     * @param doc the document of the file
+     */
+    public void startDocRecording(IFile file, IDocument doc) {
+        String path = EditorUtilities.getInputFilePath(file);
+        if (path == null) {
+            return;
+        }
+        
+        boolean added = false;
+        synchronized (getLock(path)) {
+            DocMacroRecorder docRecorder = getDocRecorder(path);
+            if (docRecorder == null) {
+                docRecorder = new DocMacroRecorderOffEdit(file, doc, this);
+                putDocRecorder(path, docRecorder);
+                docRecorder.start();
+                added = true;
+            } else if (docRecorder instanceof DocMacroRecorderOffEdit) {
+                synchronized (idleDocRecorders) {
+                    idleDocRecorders.get(docRecorder);
                 }
             }
-        });
+        }
+        
+        if (added) {
+            evictIdleDocRecorders();
+        }
     }
     
-    private void startDocRecording(IFile file, Recorder recorder) {
-        String path = file.getFullPath().toString();
-        DocMacroRecorder docRecorder = getDocRecorder(path);
-        if (docRecorder == null) {
-            docRecorder = new DocMacroRecorderOffEdit(file, recorder);
-            docRecorders.put(path, docRecorder);
-            docRecorder.start();
+    /**
+     * Stops the recording of document macros related to a file whose buffer was disposed.
+     * Nothing is done while the file is opened on an editor.
+     * @param file the file
+     */
+    public void stopDocRecording(IFile file) {
+        String path = EditorUtilities.getInputFilePath(file);
+        if (path == null) {
+            return;
+        }
+        
+        synchronized (getLock(path)) {
+            DocMacroRecorder docRecorder = getDocRecorder(path);
+            if (docRecorder instanceof DocMacroRecorderOffEdit) {
+                docRecorder.stop();
+                removeDocRecorder(path);
+            }
+        }
+    }
+    
+    /**
+     * Stops the recorders not related to editors that were attached the longest ago and whose file buffers
+     * are no longer connected, so that the number of such recorders does not exceed its limit.
+     * Recorders of connected buffers are stopped only when their buffers are disposed.
+     */
+    private void evictIdleDocRecorders() {
+        List<DocMacroRecorderOffEdit> evicted = new ArrayList<DocMacroRecorderOffEdit>();
+        synchronized (idleDocRecorders) {
+            int excess = idleDocRecorders.size() - MAX_IDLE_DOC_RECORDERS;
+            for (DocMacroRecorderOffEdit docRecorder : idleDocRecorders.keySet()) {
+                if (excess <= 0) {
+                    break;
+                }
+                if (docRecorder.isDetachable()) {
+                    evicted.add(docRecorder);
+                    excess--;
+                }
+            }
+        }
+        
+        for (DocMacroRecorderOffEdit docRecorder : evicted) {
+            String path = docRecorder.getPath();
+            synchronized (getLock(path)) {
+                if (getDocRecorder(path) == docRecorder && docRecorder.isDetachable()) {
+                    docRecorder.stop();
+                    removeDocRecorder(path);
+                }
+            }
         }
     }
     
@@ -169,21 +274,22 @@ public class Recorder {
      * Starts the recording of document macros performed on an editor.
      * @param editor the editor
      */
-    public synchronized void start(IEditorPart editor) {
+    public void start(IEditorPart editor) {
         String path = EditorUtilities.getInputFilePath(editor);
-        DocMacroRecorder docRecorder = getDocRecorder(path);
-        if (docRecorder == null) {
-            docRecorder = new DocMacroRecorderOnEdit(editor, this, compressor);
-            docRecorders.put(path, docRecorder);
-            docRecorder.start();
-            
-        } else {
-            docRecorder.stop();
-            removeDocRecorder(path);
-            
-            docRecorder = new DocMacroRecorderOnEdit(editor, this, compressor);
-            docRecorders.put(path, docRecorder);
-            docRecorder.start();
+        if (path == null) {
+            return;
+        }
+        
+        synchronized (getLock(path)) {
+            DocMacroRecorder docRecorder = getDocRecorder(path);
+            if (docRecorder == null) {
+                docRecorder = new DocMacroRecorderOnEdit(editor, this);
+                putDocRecorder(path, docRecorder);
+                docRecorder.start();
+                
+            } else {
+                handOver(path, docRecorder, new DocMacroRecorderOnEdit(editor, this));
+            }
         }
     }
     
@@ -195,28 +301,65 @@ public class Recorder {
             menuRecorder.stop();
         }
         
+        FileBufferManager.unregister(fileBufferManager);
+        
         for (DocMacroRecorder docRrecorder : getDocRecorders()) {
-            docRrecorder.stop();
+            String path = docRrecorder.getPath();
+            synchronized (getLock(path)) {
+                if (getDocRecorder(path) == docRrecorder) {
+                    docRrecorder.stop();
+                    removeDocRecorder(path);
+                }
+            }
         }
-        docRecorders.clear();
+        dirtyDocRecorders.clear();
+        
+        dispatcher.stop();
+        
+        RecorderStatistics.getInstance().unregisterMBeans();
     }
     
     /**
      * Stops the recording of menu and document macros performed on an editor.
      * @param editor the editor
      */
-    public synchronized void stop(IEditorPart editor) {
+    public void stop(IEditorPart editor) {
         String path = EditorUtilities.getInputFilePath(editor);
-        DocMacroRecorder docRecorder = getDocRecorder(path);
-        if (docRecorder != null) {
-            docRecorder.stop();
-            removeDocRecorder(path);
-            
-            IFile file = EditorUtilities.getInputFile(editor);
-            docRecorder = new DocMacroRecorderOffEdit(file, this);
-            docRecorders.put(path, docRecorder);
-            docRecorder.start();
+        if (path == null) {
+            return;
+        }
+        
+        synchronized (getLock(path)) {
+            DocMacroRecorder docRecorder = getDocRecorder(path);
+            if (docRecorder != null) {
+                IFile file = EditorUtilities.getInputFile(editor);
+                handOver(path, docRecorder, new DocMacroRecorderOffEdit(file, this));
+            }
+        }
+    }
+    
+    /**
+     * Replaces a recorder related to a file with a new one.
+     * The new recorder takes over the state of the old one if both record the same document,
+     * otherwise the old recorder is stopped and the new one reads the document again.
+     * This method must be called while holding the lock for the file.
+     * @param path the path of the file
+     * @param oldRecorder the recorder to be replaced
+     * @param newRecorder the recorder that replaces the old one
+     */
+    private void handOver(String path, DocMacroRecorder oldRecorder, DocMacroRecorder newRecorder) {
+        if (newRecorder.takeOver(oldRecorder)) {
+            putDocRecorder(path, newRecorder);
+            RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.HANDOFFS);
+            return;
         }
+        
+        oldRecorder.stop();
+        removeDocRecorder(path);
+        
+        putDocRecorder(path, newRecorder);
+        newRecorder.start();
+        RecorderStatistics.getInstance().increment(RecorderStatistics.Counter.HANDOFFS_FAILED);
     }
     
     /**
@@ -239,24 +382,84 @@ public class Recorder {
      * Sends a macro event to all the listeners.
      * @param macro the macro sent to the listeners
      */
+    @Override
     public void notifyMacro(Macro macro) {
+        long start = System.nanoTime();
         MacroEvent evt = new MacroEvent(MacroEvent.GENERIC_MACRO, macro);
-        for (MacroListener listener : macroListeners) {
-            listener.macroAdded(evt);
-        }
+        dispatcher.dispatch(evt);
+        RecorderStatistics.getInstance().recordSince(RecorderStatistics.Timer.NOTIFY_MACRO, start);
     }
     
     /**
      * Sends a macro event to all the listeners.
      * @param macro the macro sent to the listeners
      */
+    @Override
     public void notifyRawMacro(Macro macro) {
         MacroEvent evt = new MacroEvent(MacroEvent.RAW_MACRO, macro);
-        for (MacroListener listener : macroListeners) {
-            listener.documentChanged(evt);
+        dispatcher.dispatch(evt);
+    }
+    
+    /**
+     * Adds a listener that receives a diagnostic event.
+     * @param listener the event listener to be added
+     */
+    public void addDiagnosticListener(DiagnosticListener listener) {
+        diagnosticListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener that receives a diagnostic event.
+     * @param listener the event listener to be removed
+     */
+    public void removeDiagnosticListener(DiagnosticListener listener) {
+        diagnosticListeners.remove(listener);
+    }
+    
+    /**
+     * Sends a diagnostic event to all the listeners on the calling thread.
+     * @param evt the diagnostic event
+     */
+    @Override
+    public void reportDiagnostic(DiagnosticEvent evt) {
+        for (DiagnosticListener listener : diagnosticListeners) {
+            listener.diagnosticReported(evt);
         }
     }
     
+    /**
+     * Waits until all the macro events sent so far have been delivered to the listeners.
+     * Returns immediately when it is called by a listener.
+     */
+    public void flush() {
+        dispatcher.flush(0);
+    }
+    
+    /**
+     * Waits until all the macro events sent so far have been delivered to the listeners.
+     * @param timeout the maximum time to wait in milliseconds
+     * @return <code>true</code> if all the events were delivered, otherwise <code>false</code>
+     */
+    public boolean flush(long timeout) {
+        return dispatcher.flush(timeout);
+    }
+    
+    /**
+     * Returns the number of raw macro events discarded due to the overflow of the event queue.
+     * @return the number of the discarded events
+     */
+    public long getDiscardedMacroCount() {
+        return dispatcher.getDiscardedCount();
+    }
+    
+    /**
+     * Returns the statistics of the work done by the recorders.
+     * @return the recorder statistics
+     */
+    public RecorderStatistics getStatistics() {
+        return RecorderStatistics.getInstance();
+    }
+    
     /**
      * Dumps the remaining macro of a file.
      * @param path the path of the file
@@ -272,7 +475,7 @@ public class Recorder {
      * Dumps the remaining macro stored in all files.
      */
     public void dumpRemainingMacro() {
-        for (DocMacroRecorder docRrecorder : getDocRecorders()) {
+        for (DocumentRecorder docRrecorder : getDirtyDocRecorders()) {
             docRrecorder.dumpLastDocumentMacro();
         }
     }
@@ -296,12 +499,10 @@ public class Recorder {
      * Break the current macro stored in all files.
      */
     public void breakMacro() {
-        for (DocMacroRecorder docRrecorder : getDocRecorders()) {
-            docRrecorder.breakMacro();
-        }
-        
         if (menuRecorder != null) {
             menuRecorder.breakMacro();
+        } else {
+            DocumentRecorder.breakDirtyMacros(this);
         }
     }
     
@@ -311,15 +512,45 @@ public class Recorder {
      * @return the recorder, or <code>null</code> if none
      */
     public static DocMacroRecorder getDocRecorder(String path) {
+        if (path == null) {
+            return null;
+        }
         return docRecorders.get(path);
     }
     
+    /**
+     * Registers a recorder that records document macros related to a file.
+     * @param path the path of the file
+     * @param docRecorder the recorder
+     */
+    private static void putDocRecorder(String path, DocMacroRecorder docRecorder) {
+        DocMacroRecorder old = docRecorders.put(path.intern(), docRecorder);
+        synchronized (idleDocRecorders) {
+            if (old != null) {
+                idleDocRecorders.remove(old);
+            }
+            if (docRecorder instanceof DocMacroRecorderOffEdit) {
+                idleDocRecorders.put((DocMacroRecorderOffEdit)docRecorder, Boolean.TRUE);
+            }
+        }
+    }
+    
     /**
      * Removes a recorder that records document macros related to a file.
      * @param path the path of the file
      */
     public static void removeDocRecorder(String path) {
-        docRecorders.remove(path);
+        if (path == null) {
+            return;
+        }
+        
+        DocMacroRecorder docRecorder = docRecorders.remove(path);
+        if (docRecorder != null) {
+            dirtyDocRecorders.remove(docRecorder);
+            synchronized (idleDocRecorders) {
+                idleDocRecorders.remove(docRecorder);
+            }
+        }
     }
     
     /**
@@ -329,4 +560,104 @@ public class Recorder {
     public static Collection<DocMacroRecorder> getDocRecorders() {
         return docRecorders.values();
     }
+    
+    /**
+     * Returns the lock that serializes the start and stop of recorders related to a file.
+     * @param path the path of the file
+     * @return the lock
+     */
+    private static Object getLock(String path) {
+        int h = path.hashCode();
+        h = h ^ (h >>> 16);
+        return docRecorderLocks[h & (LOCK_STRIPES - 1)];
+    }
+    
+    /**
+     * Marks a recorder that might have pending macros or unsynchronized document changes.
+     * @param docRecorder the recorder
+     */
+    public static void markDirtyDocRecorder(DocumentRecorder docRecorder) {
+        dirtyDocRecorders.add(docRecorder);
+    }
+    
+    /**
+     * Unmarks a recorder that has no pending macro and no unsynchronized document change.
+     * @param docRecorder the recorder
+     * @return <code>true</code> if the recorder was marked, otherwise <code>false</code>
+     */
+    public static boolean unmarkDirtyDocRecorder(DocumentRecorder docRecorder) {
+        return dirtyDocRecorders.remove(docRecorder);
+    }
+    
+    /**
+     * Returns the recorders that might have pending macros or unsynchronized document changes.
+     * @return the snapshot of the collection of the recorders
+     */
+    public static List<DocumentRecorder> getDirtyDocRecorders() {
+        return new ArrayList<DocumentRecorder>(dirtyDocRecorders);
+    }
+    
+    /**
+     * Obtains the current time.
+     * @return the current time in milliseconds
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+    
+    /**
+     * Returns the parent macro on which the current recorded macro dangles.
+     * @return the parent macro, or <code>null</code> if none
+     */
+    @Override
+    public Macro getParentMacro() {
+        return MenuMacroRecorder.getInstance().getParentMacro();
+    }
+    
+    /**
+     * Sets the parent macro on which the current recorded macro dangles.
+     * @param parent the parent macro, or <code>null</code> if no parent exists
+     */
+    @Override
+    public void setParentMacro(Macro parent) {
+        MenuMacroRecorder.getInstance().setParentMacro(parent);
+    }
+    
+    /**
+     * Marks a recorder that might have pending macros or unsynchronized document changes.
+     * @param docRecorder the recorder
+     */
+    @Override
+    public void markDirty(DocumentRecorder docRecorder) {
+        markDirtyDocRecorder(docRecorder);
+    }
+    
+    /**
+     * Unmarks a recorder that has no pending macro and no unsynchronized document change.
+     * @param docRecorder the recorder
+     * @return <code>true</code> if the recorder was marked, otherwise <code>false</code>
+     */
+    @Override
+    public boolean unmarkDirty(DocumentRecorder docRecorder) {
+        return unmarkDirtyDocRecorder(docRecorder);
+    }
+    
+    /**
+     * Returns the recorders that might have pending macros or unsynchronized document changes.
+     * @return the snapshot of the collection of the recorders
+     */
+    @Override
+    public List<DocumentRecorder> getDirtyRecorders() {
+        return getDirtyDocRecorders();
+    }
+    
+    /**
+     * Removes the recorder related to a file that was removed.
+     * @param path the path of the file
+     */
+    @Override
+    public void removeRecorder(String path) {
+        removeDocRecorder(path);
+    }
 }
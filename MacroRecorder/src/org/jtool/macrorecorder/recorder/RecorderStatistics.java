@@ -0,0 +1,588 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the work done by the recorders and records how long the work takes.
+ * The values can be read through a snapshot, or through JMX once the MBeans are registered.
+ * @author Katsuhisa Maruyama
+ */
+public class RecorderStatistics implements RecorderStatisticsMXBean {
+    
+    /**
+     * The latency in nanoseconds above which the work of the recorders delays typing noticeably.
+     */
+    public static final long LATENCY_ALERT_THRESHOLD = 1000000;
+    
+    /**
+     * The domain of the names of the MBeans.
+     */
+    private static final String MBEAN_DOMAIN = "org.jtool.macrorecorder";
+    
+    /**
+     * The kinds of the counted work.
+     */
+    public enum Counter {
+        
+        /**
+         * The number of times the necessity of difference macros was checked.
+         */
+        DIFF_CHECKS,
+        
+        /**
+         * The number of checks skipped since the document was not modified after the last synchronization.
+         */
+        DIFF_CHECKS_SKIPPED,
+        
+        /**
+         * The number of checks that found differences between the document and its shadow code.
+         */
+        DIFFS_GENERATED,
+        
+        /**
+         * The number of checks that compared only the regions of the document changed since the last synchronization.
+         */
+        REGION_DIFFS,
+        
+        /**
+         * The number of recorders that took over the state of another recorder for the same document.
+         */
+        HANDOFFS,
+        
+        /**
+         * The number of recorders that could not take over the state and read the document again.
+         */
+        HANDOFFS_FAILED,
+        
+        /**
+         * The number of document macros recorded as raw macros.
+         */
+        DOCUMENT_MACROS_RECORDED,
+        
+        /**
+         * The number of document macros sent after compression.
+         */
+        DOCUMENT_MACROS_EMITTED,
+        
+        /**
+         * The number of document macros combined with their previous macros.
+         */
+        DOCUMENT_MACROS_COMPRESSED,
+        
+        /**
+         * The number of compressed macros cancelled out by deletions of the text they inserted.
+         */
+        DOCUMENT_MACROS_CANCELLED,
+        
+        /**
+         * The number of document macros that did not match the shadow code.
+         */
+        DOCUMENT_MACROS_MISMATCHED,
+        
+        /**
+         * The number of times the shadow code was resynchronized with the document after a mismatch.
+         */
+        RESYNCS,
+        
+        /**
+         * The number of bulk changes by commands or whole-document replacements recorded as difference macros.
+         */
+        BULK_CHANGES,
+        
+        /**
+         * The number of document events folded into bulk changes without being recorded as macros.
+         */
+        BULK_EVENTS_FOLDED,
+        
+        /**
+         * The number of cursor moves received from the editors.
+         */
+        CURSOR_MOVES,
+        
+        /**
+         * The number of trigger macros recorded for coalesced cursor moves.
+         */
+        CURSOR_TRIGGERS,
+        
+        /**
+         * The number of differences computed by the recorders for difference macros.
+         */
+        DIFFS_COMPUTED,
+        
+        /**
+         * The number of computed differences that passed their deadlines and reported coarse replacements.
+         */
+        DIFF_TIMEOUTS,
+        
+        /**
+         * The total number of characters of the texts whose differences were computed by the recorders.
+         */
+        DIFF_INPUT_CHARS;
+    }
+    
+    /**
+     * The kinds of the timed work.
+     */
+    public enum Timer {
+        
+        /**
+         * The handling of a document event that will change a document.
+         */
+        DOCUMENT_EVENT,
+        
+        /**
+         * The dump of pending and latest macros.
+         */
+        DUMP_MACROS,
+        
+        /**
+         * The check of the necessity of difference macros, including the generation of the macros.
+         */
+        NEED_DIFF,
+        
+        /**
+         * The computation of the differences between two texts for difference macros.
+         */
+        DIFF,
+        
+        /**
+         * The notification of a macro to the listeners.
+         */
+        NOTIFY_MACRO;
+    }
+    
+    /**
+     * The single instance of the statistics.
+     */
+    private static RecorderStatistics instance = new RecorderStatistics();
+    
+    /**
+     * The current values of the counters.
+     */
+    private AtomicLongArray counts = new AtomicLongArray(Counter.values().length);
+    
+    /**
+     * The histograms of the latencies of the timed work.
+     */
+    private LatencyHistogram[] latencies = new LatencyHistogram[Timer.values().length];
+    
+    /**
+     * The names of the MBeans registered with the platform MBean server.
+     */
+    private ObjectName[] mbeanNames;
+    
+    /**
+     * Creates an object that counts the work done by the recorders.
+     */
+    private RecorderStatistics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Returns the single instance of the statistics.
+     * @return the statistics
+     */
+    public static RecorderStatistics getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Increments a counter.
+     * @param counter the counter
+     */
+    public void increment(Counter counter) {
+        counts.incrementAndGet(counter.ordinal());
+    }
+    
+    /**
+     * Adds a given value to a counter.
+     * @param counter the counter
+     * @param value the value to be added
+     */
+    public void add(Counter counter, long value) {
+        counts.addAndGet(counter.ordinal(), value);
+    }
+    
+    /**
+     * Returns the current value of a counter.
+     * @param counter the counter
+     * @return the value of the counter
+     */
+    public long get(Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+    
+    /**
+     * Records the latency of timed work.
+     * @param timer the kind of the work
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(Timer timer, long nanos) {
+        latencies[timer.ordinal()].record(nanos);
+    }
+    
+    /**
+     * Records the latency of timed work that started at a given time.
+     * @param timer the kind of the work
+     * @param start the time when the work started, obtained by <code>System.nanoTime</code>
+     */
+    public void recordSince(Timer timer, long start) {
+        latencies[timer.ordinal()].record(System.nanoTime() - start);
+    }
+    
+    /**
+     * Returns the histogram of the latencies of timed work.
+     * @param timer the kind of the work
+     * @return the histogram
+     */
+    public LatencyHistogram getLatency(Timer timer) {
+        return latencies[timer.ordinal()];
+    }
+    
+    /**
+     * Returns the current values of all the counters.
+     * @return the values indexed by the names of the counters
+     */
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<String, Long>();
+        for (Counter counter : Counter.values()) {
+            values.put(counter.name(), get(counter));
+        }
+        return values;
+    }
+    
+    /**
+     * Takes a snapshot of all the counters and the latency histograms.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] values = new long[counts.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.get(i);
+        }
+        
+        LatencyHistogram.Snapshot[] histograms = new LatencyHistogram.Snapshot[latencies.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = latencies[i].snapshot();
+        }
+        return new Snapshot(System.currentTimeMillis(), values, histograms);
+    }
+    
+    /**
+     * Returns the ratio of the checks for difference macros that were skipped.
+     * @return the skip rate between <code>0</code> and <code>1</code>
+     */
+    @Override
+    public double getDiffSkipRate() {
+        return ratio(get(Counter.DIFF_CHECKS_SKIPPED), get(Counter.DIFF_CHECKS));
+    }
+    
+    /**
+     * Returns the ratio of the number of document macros sent after compression to the number of recorded ones.
+     * @return the compression ratio, or <code>0</code> if no document macro was recorded
+     */
+    @Override
+    public double getCompressionRatio() {
+        return ratio(get(Counter.DOCUMENT_MACROS_EMITTED), get(Counter.DOCUMENT_MACROS_RECORDED));
+    }
+    
+    /**
+     * Returns the ratio of the number of trigger macros recorded for cursor moves to the number of the moves.
+     * @return the cursor trigger ratio
+     */
+    @Override
+    public double getCursorTriggerRatio() {
+        return ratio(get(Counter.CURSOR_TRIGGERS), get(Counter.CURSOR_MOVES));
+    }
+    
+    /**
+     * Returns the ratio of the computed differences that passed their deadlines.
+     * @return the timeout rate between <code>0</code> and <code>1</code>
+     */
+    @Override
+    public double getDiffTimeoutRate() {
+        return ratio(get(Counter.DIFF_TIMEOUTS), get(Counter.DIFFS_COMPUTED));
+    }
+    
+    /**
+     * Resets all the counters and the latency histograms.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+    }
+    
+    /**
+     * Registers the MBeans of the statistics with the platform MBean server.
+     */
+    public synchronized void registerMBeans() {
+        if (mbeanNames != null) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName[] names = new ObjectName[latencies.length + 1];
+        try {
+            names[0] = new ObjectName(MBEAN_DOMAIN + ":type=RecorderStatistics");
+            register(server, this, names[0]);
+            for (Timer timer : Timer.values()) {
+                ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=Latency,name=" + timer.name());
+                names[timer.ordinal() + 1] = name;
+                register(server, new Latency(timer), name);
+            }
+            mbeanNames = names;
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Unregisters the MBeans of the statistics from the platform MBean server.
+     */
+    public synchronized void unregisterMBeans() {
+        if (mbeanNames == null) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : mbeanNames) {
+            try {
+                if (name != null && server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        mbeanNames = null;
+    }
+    
+    /**
+     * Registers an MBean, replacing the one registered under the same name.
+     * @param server the MBean server
+     * @param mbean the MBean
+     * @param name the name of the MBean
+     * @throws JMException if the MBean cannot be registered
+     */
+    private static void register(MBeanServer server, Object mbean, ObjectName name) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+    }
+    
+    /**
+     * Calculates the ratio of two values.
+     * @param numerator the numerator
+     * @param denominator the denominator
+     * @return the ratio, or <code>0</code> if the denominator is zero
+     */
+    private static double ratio(long numerator, long denominator) {
+        if (denominator == 0) {
+            return 0;
+        }
+        return (double)numerator / denominator;
+    }
+    
+    /**
+     * Returns the string for printing, which does not contain a new line character at its end.
+     * @return the string for printing
+     */
+    public String toString() {
+        StringBuilder buf = new StringBuilder("STATS =");
+        for (Counter counter : Counter.values()) {
+            buf.append(" " + counter.name() + ":" + get(counter));
+        }
+        buf.append(" DIFF_SKIP_RATE:" + String.format("%.3f", getDiffSkipRate()));
+        buf.append(" COMPRESSION_RATIO:" + String.format("%.3f", getCompressionRatio()));
+        buf.append(" CURSOR_TRIGGER_RATIO:" + String.format("%.3f", getCursorTriggerRatio()));
+        for (Timer timer : Timer.values()) {
+            buf.append(" " + timer.name() + ":[" + getLatency(timer).snapshot().toString() + "]");
+        }
+        return buf.toString();
+    }
+    
+    /**
+     * Exposes the latency histogram of timed work through JMX.
+     */
+    private class Latency implements LatencyMXBean {
+        
+        /**
+         * The kind of the work.
+         */
+        private Timer timer;
+        
+        /**
+         * Creates an MBean of a latency histogram.
+         * @param timer the kind of the work
+         */
+        Latency(Timer timer) {
+            this.timer = timer;
+        }
+        
+        /**
+         * Returns the number of the recorded latencies.
+         * @return the number of the latencies
+         */
+        @Override
+        public long getCount() {
+            return getLatency(timer).snapshot().getCount();
+        }
+        
+        /**
+         * Returns the mean of the recorded latencies.
+         * @return the mean
+         */
+        @Override
+        public double getMean() {
+            return getLatency(timer).snapshot().getMean();
+        }
+        
+        /**
+         * Returns the median of the recorded latencies.
+         * @return the median
+         */
+        @Override
+        public long getP50() {
+            return getLatency(timer).snapshot().getValueAtPercentile(50);
+        }
+        
+        /**
+         * Returns the 99th percentile of the recorded latencies.
+         * @return the 99th percentile
+         */
+        @Override
+        public long getP99() {
+            return getLatency(timer).snapshot().getValueAtPercentile(99);
+        }
+        
+        /**
+         * Returns the 99.9th percentile of the recorded latencies.
+         * @return the 99.9th percentile
+         */
+        @Override
+        public long getP999() {
+            return getLatency(timer).snapshot().getValueAtPercentile(99.9);
+        }
+        
+        /**
+         * Returns the largest recorded latency.
+         * @return the largest latency
+         */
+        @Override
+        public long getMax() {
+            return getLatency(timer).snapshot().getMax();
+        }
+        
+        /**
+         * Returns the number of recorded latencies that exceed the alert threshold.
+         * @return the number of the latencies
+         */
+        @Override
+        public long getCountAboveThreshold() {
+            return getLatency(timer).snapshot().getCountAbove(LATENCY_ALERT_THRESHOLD);
+        }
+    }
+    
+    /**
+     * Stores the values of the counters and the latency histograms at a moment.
+     */
+    public static class Snapshot {
+        
+        /**
+         * The time when the snapshot was taken.
+         */
+        private long time;
+        
+        /**
+         * The values of the counters.
+         */
+        private long[] values;
+        
+        /**
+         * The snapshots of the latency histograms.
+         */
+        private LatencyHistogram.Snapshot[] histograms;
+        
+        /**
+         * Creates a snapshot.
+         * @param time the time when the snapshot was taken
+         * @param values the values of the counters
+         * @param histograms the snapshots of the latency histograms
+         */
+        Snapshot(long time, long[] values, LatencyHistogram.Snapshot[] histograms) {
+            this.time = time;
+            this.values = values;
+            this.histograms = histograms;
+        }
+        
+        /**
+         * Returns the time when the snapshot was taken.
+         * @return the time in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+        
+        /**
+         * Returns the value of a counter.
+         * @param counter the counter
+         * @return the value of the counter
+         */
+        public long get(Counter counter) {
+            return values[counter.ordinal()];
+        }
+        
+        /**
+         * Returns the snapshot of the latency histogram of timed work.
+         * @param timer the kind of the work
+         * @return the snapshot of the histogram
+         */
+        public LatencyHistogram.Snapshot getLatency(Timer timer) {
+            return histograms[timer.ordinal()];
+        }
+        
+        /**
+         * Tests if the latency of timed work at a given percentile exceeds the alert threshold.
+         * @param timer the kind of the work
+         * @param percentile the percentile between <code>0</code> and <code>100</code>
+         * @return <code>true</code> if the latency exceeds the threshold, otherwise <code>false</code>
+         */
+        public boolean exceedsThreshold(Timer timer, double percentile) {
+            return getLatency(timer).getValueAtPercentile(percentile) > LATENCY_ALERT_THRESHOLD;
+        }
+        
+        /**
+         * Returns the values of all the counters.
+         * @return the values indexed by the names of the counters
+         */
+        public Map<String, Long> getCounters() {
+            Map<String, Long> map = new LinkedHashMap<String, Long>();
+            for (Counter counter : Counter.values()) {
+                map.put(counter.name(), get(counter));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+}
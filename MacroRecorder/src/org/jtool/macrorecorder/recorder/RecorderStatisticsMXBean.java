@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.recorder;
+
+import java.util.Map;
+
+/**
+ * Defines the management interface that exposes the counters of the recorders through JMX.
+ * @author Katsuhisa Maruyama
+ */
+public interface RecorderStatisticsMXBean {
+    
+    /**
+     * Returns the current values of all the counters.
+     * @return the values indexed by the names of the counters
+     */
+    public Map<String, Long> getCounters();
+    
+    /**
+     * Returns the ratio of the checks for difference macros that were skipped.
+     * @return the skip rate between <code>0</code> and <code>1</code>
+     */
+    public double getDiffSkipRate();
+    
+    /**
+     * Returns the ratio of the number of document macros sent after compression to the number of recorded ones.
+     * @return the compression ratio
+     */
+    public double getCompressionRatio();
+    
+    /**
+     * Returns the ratio of the number of trigger macros recorded for cursor moves to the number of the moves.
+     * @return the cursor trigger ratio
+     */
+    public double getCursorTriggerRatio();
+    
+    /**
+     * Returns the ratio of the computed differences that passed their deadlines.
+     * @return the timeout rate between <code>0</code> and <code>1</code>
+     */
+    public double getDiffTimeoutRate();
+    
+    /**
+     * Resets all the counters and the latency histograms.
+     */
+    public void reset();
+}
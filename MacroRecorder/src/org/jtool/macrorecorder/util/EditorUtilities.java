@@ -6,6 +6,10 @@
 
 package org.jtool.macrorecorder.util;
 
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.text.source.ISourceViewer;
@@ -21,10 +25,11 @@ import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.editors.text.TextFileDocumentProvider;
 import org.eclipse.ui.part.FileEditorInput;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides utilities that obtain information on editors.
@@ -32,6 +37,11 @@ import java.util.List;
  */
 public class EditorUtilities {
     
+    /**
+     * The documents of files connected through this utility, with the number of their connections.
+     */
+    private static Map<IFile, DocumentHandle> documents = new ConcurrentHashMap<IFile, DocumentHandle>();
+    
     /**
      * Obtains the source viewer of an editor.
      * @param editor the editor
@@ -110,6 +120,7 @@ public class EditorUtilities {
     
     /**
      * Obtains the document of a file.
+     * The document of a connected file is returned without reading the file.
      * @param file the file
      * @return the document of the file, or <code>null</code> if none
      */
@@ -118,11 +129,21 @@ public class EditorUtilities {
             return null;
         }
         
+        DocumentHandle handle = documents.get(file);
+        if (handle != null) {
+            return handle.doc;
+        }
+        
+        ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        ITextFileBuffer buffer = manager.getTextFileBuffer(file.getFullPath(), LocationKind.IFILE);
+        if (buffer != null) {
+            return buffer.getDocument();
+        }
+        
         try {
-            TextFileDocumentProvider provider = new TextFileDocumentProvider();
-            provider.connect(file);
-            IDocument doc = provider.getDocument(file);
-            provider.disconnect(file);
+            manager.connect(file.getFullPath(), LocationKind.IFILE, null);
+            IDocument doc = manager.getTextFileBuffer(file.getFullPath(), LocationKind.IFILE).getDocument();
+            manager.disconnect(file.getFullPath(), LocationKind.IFILE, null);
             return doc;
         } catch (CoreException e) {
             e.printStackTrace();
@@ -130,6 +151,65 @@ public class EditorUtilities {
         return null;
     }
     
+    /**
+     * Connects a file and obtains its document, which is kept until the file is disconnected.
+     * Each call must be paired with a call to <code>disconnectDocument</code>.
+     * @param file the file
+     * @return the document of the file, or <code>null</code> if none
+     */
+    public static IDocument connectDocument(IFile file) {
+        if (file == null) {
+            return null;
+        }
+        
+        synchronized (documents) {
+            DocumentHandle handle = documents.get(file);
+            if (handle == null) {
+                try {
+                    ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+                    manager.connect(file.getFullPath(), LocationKind.IFILE, null);
+                    IDocument doc = manager.getTextFileBuffer(file.getFullPath(), LocationKind.IFILE).getDocument();
+                    handle = new DocumentHandle(doc);
+                    documents.put(file, handle);
+                } catch (CoreException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+            
+            handle.count++;
+            return handle.doc;
+        }
+    }
+    
+    /**
+     * Disconnects a file connected by <code>connectDocument</code>.
+     * The document is released when the last connection is disconnected.
+     * @param file the file
+     */
+    public static void disconnectDocument(IFile file) {
+        if (file == null) {
+            return;
+        }
+        
+        synchronized (documents) {
+            DocumentHandle handle = documents.get(file);
+            if (handle == null) {
+                return;
+            }
+            
+            handle.count--;
+            if (handle.count == 0) {
+                documents.remove(file);
+                try {
+                    FileBuffers.getTextFileBufferManager().disconnect(file.getFullPath(), LocationKind.IFILE, null);
+                } catch (CoreException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+    
     /**
      * Obtains the document of a file existing on an editor.
      * @param editor the editor
@@ -238,4 +318,28 @@ public class EditorUtilities {
         }
         return null;
     }
+    
+    /**
+     * Stores the document of a connected file and the number of its connections.
+     */
+    private static class DocumentHandle {
+        
+        /**
+         * The document of the file.
+         */
+        final IDocument doc;
+        
+        /**
+         * The number of the connections to the file.
+         */
+        int count = 0;
+        
+        /**
+         * Creates an object that stores the document of a connected file.
+         * @param doc the document
+         */
+        DocumentHandle(IDocument doc) {
+            this.doc = doc;
+        }
+    }
 }
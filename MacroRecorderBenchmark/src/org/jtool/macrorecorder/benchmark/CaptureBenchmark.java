@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.benchmark;
+
+import org.jtool.changerecorder.editor.HistoryManager;
+import org.jtool.macrorecorder.core.HeadlessRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and the latency of the capture path of editing events.
+ * Each event goes through <code>DocumentEventHandler</code>, <code>DocumentRecorder.recordDocumentMacro</code>,
+ * <code>MacroCompressor.combine</code> and the notification of macros, and ends at <code>HistoryManager.macroAdded</code>.
+ * @author Katsuhisa Maruyama
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+    
+    /**
+     * The number of characters of each document.
+     */
+    @Param({ "1024", "65536", "2097152" })
+    public int fileSize;
+    
+    /**
+     * The pattern of typing.
+     */
+    @Param({ "APPEND", "MIDDLE", "UNDO_STORM", "NAVIGATE" })
+    public TypingScript.Pattern pattern;
+    
+    /**
+     * The number of recorders attached to opened documents.
+     */
+    @Param({ "1", "16" })
+    public int recorders;
+    
+    /**
+     * The recorder that receives the editing events.
+     */
+    private HeadlessRecorder recorder;
+    
+    /**
+     * The history manager that receives macros.
+     */
+    private HistoryManager historyManager;
+    
+    /**
+     * The scripts that type on the respective documents.
+     */
+    private TypingScript[] scripts;
+    
+    /**
+     * The index of the script that performs the next event.
+     */
+    private int index = 0;
+    
+    /**
+     * Opens the documents.
+     */
+    @Setup(Level.Trial)
+    public void open() {
+        recorder = new SteppingRecorder();
+        
+        String code = TypingScript.createSource(fileSize);
+        scripts = new TypingScript[recorders];
+        for (int i = 0; i < recorders; i++) {
+            String path = "/Benchmark/src/Sample" + i + ".java";
+            recorder.open(path, code);
+            scripts[i] = new TypingScript(recorder, path, pattern);
+        }
+    }
+    
+    /**
+     * Attaches a new history manager, so that the history does not grow across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void attach() {
+        historyManager = new HistoryManager();
+        recorder.addMacroListener(historyManager);
+    }
+    
+    /**
+     * Detaches the history manager.
+     */
+    @TearDown(Level.Iteration)
+    public void detach() {
+        recorder.breakMacro();
+        recorder.removeMacroListener(historyManager);
+    }
+    
+    /**
+     * Closes the documents.
+     */
+    @TearDown(Level.Trial)
+    public void close() {
+        recorder.close();
+    }
+    
+    /**
+     * Performs an editing event on one of the documents.
+     */
+    @Benchmark
+    public void type() {
+        scripts[index].next();
+        index++;
+        if (index == scripts.length) {
+            index = 0;
+        }
+    }
+    
+    /**
+     * Runs the benchmark with the allocation profiler.
+     * @param args the arguments, which are not used
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CaptureBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+    
+    /**
+     * A recorder whose clock advances one millisecond per query, so that macros are combined as in continuous typing.
+     */
+    static class SteppingRecorder extends HeadlessRecorder {
+        
+        /**
+         * The current time.
+         */
+        private long time = 0;
+        
+        /**
+         * Obtains the current time.
+         * @return the current time in milliseconds
+         */
+        @Override
+        public long getCurrentTime() {
+            time++;
+            return time;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2014
+ *  Software Science and Technology Lab.
+ *  Department of Computer Science, Ritsumeikan University
+ */
+
+package org.jtool.macrorecorder.benchmark;
+
+import org.jtool.macrorecorder.core.HeadlessRecorder;
+import org.jtool.macrorecorder.core.TextBuffer;
+
+/**
+ * Replays a typing pattern on a document, one editing event at a time.
+ * Typed text is removed periodically, so the size of the document stays around its initial size.
+ * @author Katsuhisa Maruyama
+ */
+public class TypingScript {
+    
+    /**
+     * The patterns of typing.
+     */
+    public enum Pattern {
+        
+        /**
+         * Types lines at the end of the document.
+         */
+        APPEND,
+        
+        /**
+         * Types lines in the middle of the document.
+         */
+        MIDDLE,
+        
+        /**
+         * Types a word in the middle of the document and undoes each character of it.
+         */
+        UNDO_STORM,
+        
+        /**
+         * Moves the cursor several times before typing each character in the middle of the document.
+         */
+        NAVIGATE;
+    }
+    
+    /**
+     * The line typed character by character.
+     */
+    static final String LINE = "        value = value + 1;\n";
+    
+    /**
+     * The word typed before it is undone.
+     */
+    static final String WORD = "counter1";
+    
+    /**
+     * The number of lines typed before they are removed at once.
+     */
+    private static final int LINES_PER_BLOCK = 64;
+    
+    /**
+     * The number of cursor moves before each typed character.
+     */
+    private static final int MOVES_PER_CHARACTER = 16;
+    
+    /**
+     * The recorder that receives the editing events.
+     */
+    private HeadlessRecorder recorder;
+    
+    /**
+     * The path of the document.
+     */
+    private String path;
+    
+    /**
+     * The document.
+     */
+    private TextBuffer buffer;
+    
+    /**
+     * The pattern of typing.
+     */
+    private Pattern pattern;
+    
+    /**
+     * The offset where the text is typed.
+     */
+    private int anchor;
+    
+    /**
+     * The length of the text typed since the text was last removed.
+     */
+    private int typed = 0;
+    
+    /**
+     * The number of characters to be undone, or <code>0</code> if typing continues.
+     */
+    private int undoing = 0;
+    
+    /**
+     * The number of cursor moves since the last typed character.
+     */
+    private int moves = 0;
+    
+    /**
+     * Creates a script that types on a document.
+     * @param recorder the recorder that receives the editing events
+     * @param path the path of the opened document
+     * @param pattern the pattern of typing
+     */
+    public TypingScript(HeadlessRecorder recorder, String path, Pattern pattern) {
+        this.recorder = recorder;
+        this.path = path;
+        this.buffer = recorder.getDocument(path);
+        this.pattern = pattern;
+        this.anchor = getAnchor();
+    }
+    
+    /**
+     * Performs the next editing event.
+     */
+    public void next() {
+        if (pattern == Pattern.UNDO_STORM) {
+            nextUndoStorm();
+        } else if (pattern == Pattern.NAVIGATE && moves < MOVES_PER_CHARACTER) {
+            recorder.cursorMoved(path);
+            moves++;
+        } else {
+            moves = 0;
+            nextLine();
+        }
+    }
+    
+    /**
+     * Types the next character of a line, or removes the typed lines.
+     */
+    private void nextLine() {
+        if (typed == LINE.length() * LINES_PER_BLOCK) {
+            recorder.replace(path, anchor, typed, "");
+            recorder.cursorMoved(path);
+            typed = 0;
+            if (pattern == Pattern.APPEND) {
+                anchor = buffer.getLength();
+            }
+            return;
+        }
+        
+        int pos = typed % LINE.length();
+        recorder.replace(path, anchor + typed, 0, LINE.substring(pos, pos + 1));
+        typed++;
+    }
+    
+    /**
+     * Types the next character of a word, or undoes the last typed character.
+     */
+    private void nextUndoStorm() {
+        if (undoing > 0) {
+            undoing--;
+            recorder.aboutToUndo(path);
+            recorder.replace(path, anchor + undoing, 1, "");
+            recorder.undone(path);
+            return;
+        }
+        
+        recorder.replace(path, anchor + typed, 0, WORD.substring(typed, typed + 1));
+        typed++;
+        if (typed == WORD.length()) {
+            undoing = typed;
+            typed = 0;
+        }
+    }
+    
+    /**
+     * Returns the offset where the text is typed.
+     * @return the end of the document, or the start of the line in the middle of the document
+     */
+    private int getAnchor() {
+        if (pattern == Pattern.APPEND) {
+            return buffer.getLength();
+        }
+        String text = buffer.get();
+        return text.lastIndexOf('\n', text.length() / 2) + 1;
+    }
+    
+    /**
+     * Creates the contents of a Java source file of a given size.
+     * @param size the number of characters
+     * @return the contents
+     */
+    public static String createSource(int size) {
+        StringBuilder buf = new StringBuilder(size + LINE.length());
+        buf.append("public class Sample {\n");
+        buf.append("    int value;\n");
+        int n = 0;
+        while (buf.length() < size - 2) {
+            buf.append("    void method").append(n).append("() {\n");
+            buf.append(LINE);
+            buf.append("    }\n");
+            n++;
+        }
+        buf.setLength(Math.max(0, size - 2));
+        buf.append("}\n");
+        return buf.toString();
+    }
+}
@@ -1,7 +1,7 @@
 package jp.ac.ritsumei.cs.fse.contentassist;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import jp.ac.ritsumei.cs.fse.contentassist.DataAnalyser.ConsoleOperationListener2;
 import jp.ac.ritsumei.cs.fse.contentassist.entity.ApplyOperation;
@@ -23,7 +23,8 @@ public class Activator extends AbstractUIPlugin implements IStartup {
 	// The shared instance
 	private static Activator plugin;
 	
-	public static List<ApplyOperation> applyoperationlist = new ArrayList<ApplyOperation>();
+	// Updated from the operation dispatcher thread while completion proposals are added on the UI thread
+	public static List<ApplyOperation> applyoperationlist = new CopyOnWriteArrayList<ApplyOperation>();
 	
 	/**
 	 * The constructor
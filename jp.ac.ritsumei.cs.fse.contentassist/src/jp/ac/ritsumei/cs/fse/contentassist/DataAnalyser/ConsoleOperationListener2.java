@@ -24,16 +24,15 @@ public class ConsoleOperationListener2 implements OperationEventListener {
      * @param evt the received event
      */
     HistoryRecorder hr = new HistoryRecorder();
-    public static TextOperation ope;
+    public static volatile TextOperation ope;
     public void historyNotification(OperationEvent evt) {
-    	try {
-        	ConsoleOperationListener2.ope = (TextOperation) evt.getOperation();
-    	}
-    	catch(Exception e) {
-    		
+    	if (!(evt.getOperation() instanceof TextOperation)) {
+    		return;
     	}
+    	TextOperation op = (TextOperation) evt.getOperation();
+    	ConsoleOperationListener2.ope = op;
     	for (ApplyOperation ao : Activator.applyoperationlist) {
-    		ao.update(ope.getStart(), ope.getDeletedText(), ope.getInsertedText());
+    		ao.update(op.getStart(), op.getDeletedText(), op.getInsertedText());
     		System.out.println(ao.toString());
     	}	
     }
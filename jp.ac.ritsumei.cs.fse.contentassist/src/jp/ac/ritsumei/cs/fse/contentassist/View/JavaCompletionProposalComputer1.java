@@ -21,6 +21,7 @@ import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.eclipse.jface.text.contentassist.IContextInformation;
 import org.eclipse.jface.viewers.StyledString;
 import org.eclipse.jface.viewers.StyledString.Styler;
+import org.jtool.changerecorder.operation.TextOperation;
 
 public class JavaCompletionProposalComputer1 implements
 		IJavaCompletionProposalComputer {
@@ -42,12 +43,16 @@ public class JavaCompletionProposalComputer1 implements
 
 	    ICompletionProposal first;
 	    DataManager datamanger = new DataManager(context,monitor);
-	    Activator.applyoperationlist.add(new ApplyOperation(ConsoleOperationListener2.ope.getStart(), ConsoleOperationListener2.ope.getAuthor(), ConsoleOperationListener2.ope.getFilePath(), propList));
+	    TextOperation ope = ConsoleOperationListener2.ope;
+	    if (ope == null) {
+	    	return newpropList;
+	    }
+	    Activator.applyoperationlist.add(new ApplyOperation(ope.getStart(), ope.getAuthor(), ope.getFilePath(), propList));
 	    List<String> list = new ArrayList();
 	    CompletionProposal proposal;
 	    propList = datamanger.JavaDefaultProposal();
 	    propList2 = datamanger.ContextInformation();
-	    ApplyOperation ao = new ApplyOperation(ConsoleOperationListener2.ope.getStart(), ConsoleOperationListener2.ope.getAuthor(), ConsoleOperationListener2.ope.getFilePath(), propList);
+	    ApplyOperation ao = new ApplyOperation(ope.getStart(), ope.getAuthor(), ope.getFilePath(), propList);
 	    System.out.println(ao.toString());
 	    return newpropList;
 	}